@@ -0,0 +1,98 @@
+package ru.practicum.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Следит через JFR за закреплением виртуальных потоков за потоком-носителем (блокировка внутри synchronized
+// или нативного вызова) дольше ewm.pinning.threshold. Каждый случай попадает в таймер jvm.threads.virtual.pinned
+// с тегом site — первым кадром нашего кода в стеке, — а стек пишется в лог не чаще раза в report-interval на site.
+// Общий для main-service и stat-server, подключается автоконфигурацией
+@Slf4j
+@AutoConfiguration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class PinnedThreadMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String OWN_PACKAGE = "ru.practicum.";
+    private static final int LOGGED_FRAMES = 30;
+
+    private final MeterRegistry meterRegistry;
+    private final long reportIntervalNanos;
+    private final Map<String, Long> lastReported = new ConcurrentHashMap<>();
+    private final RecordingStream recording;
+
+    public PinnedThreadMonitor(MeterRegistry meterRegistry,
+                               @Value("${ewm.pinning.threshold:20ms}") Duration threshold,
+                               @Value("${ewm.pinning.report-interval:1m}") Duration reportInterval) {
+        this.meterRegistry = meterRegistry;
+        this.reportIntervalNanos = reportInterval.toNanos();
+        this.recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        log.info("Слежение за закреплением виртуальных потоков включено, порог {}", threshold);
+    }
+
+    @PreDestroy
+    public void stop() {
+        recording.close();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = event.getStackTrace() == null
+                ? List.of()
+                : event.getStackTrace().getFrames();
+        String site = site(frames);
+        Timer.builder("jvm.threads.virtual.pinned")
+                .tag("site", site)
+                .register(meterRegistry)
+                .record(event.getDuration());
+
+        long now = System.nanoTime();
+        Long previous = lastReported.get(site);
+        if (previous == null || now - previous >= reportIntervalNanos) {
+            lastReported.put(site, now);
+            log.warn("Виртуальный поток закреплён за носителем на {} мс в {}:{}", event.getDuration().toMillis(),
+                    site, format(event.getStackTrace()));
+        }
+    }
+
+    private static String site(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith(OWN_PACKAGE)) {
+                return type.substring(type.lastIndexOf('.') + 1) + "." + frame.getMethod().getName();
+            }
+        }
+        return "other";
+    }
+
+    private static String format(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return " стек недоступен";
+        }
+        StringBuilder text = new StringBuilder();
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = 0; i < Math.min(frames.size(), LOGGED_FRAMES); i++) {
+            RecordedFrame frame = frames.get(i);
+            text.append("\n\tat ").append(frame.getMethod().getType().getName())
+                    .append('.').append(frame.getMethod().getName())
+                    .append(':').append(frame.getLineNumber());
+        }
+        return text.toString();
+    }
+}
@@ -1,12 +1,12 @@
 package ru.practicum.event.controller;
 
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -15,7 +15,9 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import ru.practicum.event.dto.EventFacetsDto;
 import ru.practicum.event.dto.EventFullDto;
+import ru.practicum.event.dto.EventPage;
 import ru.practicum.event.dto.EventShortDto;
 import ru.practicum.event.dto.NewEventDto;
 import ru.practicum.event.dto.UpdateEventAdminRequest;
@@ -25,7 +27,6 @@ import ru.practicum.event.service.EventService;
 import ru.practicum.request.dto.EventRequestStatusUpdateRequest;
 import ru.practicum.request.dto.EventRequestStatusUpdateResult;
 import ru.practicum.request.dto.ParticipationRequestDto;
-import ru.practicum.statistic.StatClient;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -33,8 +34,9 @@ import java.util.List;
 @RestController
 @RequiredArgsConstructor
 public class EventController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final EventService eventService;
-    private final StatClient statClient;
 
     @PostMapping("/users/{userId}/events")
     @ResponseStatus(HttpStatus.CREATED)
@@ -61,45 +63,53 @@ public class EventController {
     }
 
     @GetMapping("/events/{id}")
-    public EventFullDto getPublicEvent(@PathVariable("id") Long eventId,
-                                       HttpServletRequest request) {
-        statClient.hit(request);
-
+    public EventFullDto getPublicEvent(@PathVariable("id") Long eventId) {
         return eventService.getPublicEvent(eventId);
     }
 
     @GetMapping("/users/{userId}/events")
-    public List<EventShortDto> getAllByUser(@PathVariable Long userId,
-                                            @RequestParam(defaultValue = "0") @PositiveOrZero Integer from,
-                                            @RequestParam(defaultValue = "10") @Positive Integer size) {
-        return eventService.getAllByUser(userId, from, size);
+    public ResponseEntity<List<EventShortDto>> getAllByUser(@PathVariable Long userId,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(defaultValue = "0") @PositiveOrZero Integer from,
+                                                            @RequestParam(defaultValue = "10") @Positive Integer size) {
+        return withNextCursor(eventService.getAllByUser(userId, cursor, from, size));
     }
 
     @GetMapping("/admin/events")
-    public List<EventFullDto> searchForAdmin(@RequestParam(required = false) List<Long> users,
+    public ResponseEntity<List<EventFullDto>> searchForAdmin(@RequestParam(required = false) List<Long> users,
                                              @RequestParam(required = false) List<EventState> states,
                                              @RequestParam(required = false) List<Long> categories,
                                              @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeStart,
                                              @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeEnd,
+                                             @RequestParam(required = false) String cursor,
                                              @RequestParam(defaultValue = "0") @PositiveOrZero Integer from,
                                              @RequestParam(defaultValue = "10") @Positive Integer size) {
-        return eventService.searchForAdmin(users, states, categories, rangeStart, rangeEnd, from, size);
+        return withNextCursor(eventService.searchForAdmin(users, states, categories, rangeStart, rangeEnd, cursor,
+                from, size));
     }
 
     @GetMapping("/events")
-    public List<EventShortDto> searchForUser(@RequestParam(required = false) String text,
+    public ResponseEntity<List<EventShortDto>> searchForUser(@RequestParam(required = false) String text,
                                              @RequestParam(required = false) List<Long> categories,
                                              @RequestParam(required = false) Boolean paid,
                                              @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeStart,
                                              @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeEnd,
                                              @RequestParam(defaultValue = "false") Boolean onlyAvailable,
                                              @RequestParam(required = false) String sort,
+                                             @RequestParam(required = false) String cursor,
                                              @RequestParam(defaultValue = "0") @PositiveOrZero Integer from,
-                                             @RequestParam(defaultValue = "10") @Positive Integer size,
-                                             HttpServletRequest request) {
-        statClient.hit(request);
+                                             @RequestParam(defaultValue = "10") @Positive Integer size) {
+        return withNextCursor(eventService.searchForUser(text, categories, paid, rangeStart, rangeEnd, onlyAvailable,
+                sort, cursor, from, size));
+    }
 
-        return eventService.searchForUser(text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, from, size);
+    @GetMapping("/events/facets")
+    public EventFacetsDto getFacets(@RequestParam(required = false) List<Long> categories,
+                                    @RequestParam(required = false) Boolean paid,
+                                    @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeStart,
+                                    @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeEnd,
+                                    @RequestParam(defaultValue = "false") Boolean onlyAvailable) {
+        return eventService.getFacets(categories, paid, rangeStart, rangeEnd, onlyAvailable);
     }
 
     @GetMapping("/users/{userId}/events/{eventId}/requests")
@@ -113,4 +123,13 @@ public class EventController {
                                                               @Valid @RequestBody EventRequestStatusUpdateRequest request) {
         return eventService.updateRequests(userId, eventId, request);
     }
-}
\ No newline at end of file
+
+    // Тело ответа остаётся массивом событий; курсор следующей страницы передаётся заголовком
+    private static <T> ResponseEntity<List<T>> withNextCursor(EventPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getEvents());
+    }
+}
@@ -0,0 +1,109 @@
+package ru.practicum.event.dao;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
+import ru.practicum.event.model.EventCursor;
+import ru.practicum.event.model.EventState;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static ru.practicum.event.model.QEvent.event;
+
+// Условия и порядок поиска событий. В запрос попадают только заданные фильтры, поэтому у каждой их комбинации
+// свой текст SQL и свой план в PostgreSQL, а не общий план с (:param IS NULL OR ...), в котором индексы
+// по фильтрам не используются
+public final class EventPredicates {
+
+    private EventPredicates() {
+    }
+
+    public static Predicate forAdmin(List<Long> users, List<EventState> states, List<Long> categories,
+                                     LocalDateTime rangeStart, LocalDateTime rangeEnd, EventCursor after) {
+        BooleanBuilder where = new BooleanBuilder();
+        if (users != null && !users.isEmpty()) {
+            where.and(event.initiator.id.in(users));
+        }
+        if (states != null && !states.isEmpty()) {
+            where.and(event.state.in(states));
+        }
+        if (categories != null && !categories.isEmpty()) {
+            where.and(event.category.id.in(categories));
+        }
+        if (rangeStart != null) {
+            where.and(event.eventDate.goe(rangeStart));
+        }
+        if (rangeEnd != null) {
+            where.and(event.eventDate.loe(rangeEnd));
+        }
+        if (after != null) {
+            where.and(event.id.gt(after.id()));
+        }
+        return where;
+    }
+
+    // query и pattern — запрос to_tsquery и шаблон LIKE (см. EventSearchFunctions), null без текста.
+    // after — позиция продолжения в порядке publicOrder; для RELEVANCE не передаётся
+    public static Predicate forPublic(String query, String pattern, List<Long> categories, Boolean paid,
+                                      LocalDateTime rangeStart, LocalDateTime rangeEnd, boolean onlyAvailable,
+                                      EventCursor after) {
+        BooleanBuilder where = new BooleanBuilder(event.state.eq(EventState.PUBLISHED));
+        if (query != null) {
+            where.and(Expressions.booleanTemplate("event_text_match({0}, {1}, {2}) = true",
+                    event.id, query, pattern));
+        }
+        if (categories != null && !categories.isEmpty()) {
+            where.and(event.category.id.in(categories));
+        }
+        if (paid != null) {
+            where.and(event.paid.eq(paid));
+        }
+        if (rangeStart != null) {
+            where.and(event.eventDate.goe(rangeStart));
+        }
+        if (rangeEnd != null) {
+            where.and(event.eventDate.loe(rangeEnd));
+        }
+        if (onlyAvailable) {
+            where.and(event.participantLimit.eq(0L)
+                    .or(event.confirmedRequests.coalesce(0L).lt(event.participantLimit)));
+        }
+        if (after != null) {
+            where.and(seek(after));
+        }
+        return where;
+    }
+
+    // Порядок публичного поиска, согласованный с условием продолжения seek
+    public static List<OrderSpecifier<?>> publicOrder(EventCursor.Order order, String query) {
+        return switch (order) {
+            case EVENT_DATE -> List.of(event.eventDate.desc(), event.id.desc());
+            case VIEWS -> List.of(event.views.desc(), event.id.asc());
+            case RELEVANCE -> List.of(rank(query).desc(), event.id.asc());
+            case ID -> List.of(event.id.asc());
+        };
+    }
+
+    public static List<OrderSpecifier<?>> byId() {
+        return List.of(event.id.asc());
+    }
+
+    // Строки строго после позиции курсора
+    private static Predicate seek(EventCursor after) {
+        return switch (after.order()) {
+            case EVENT_DATE -> event.eventDate.lt(after.eventDate())
+                    .or(event.eventDate.eq(after.eventDate()).and(event.id.lt(after.id())));
+            case VIEWS -> event.views.lt(after.views())
+                    .or(event.views.eq(after.views()).and(event.id.gt(after.id())));
+            case ID -> event.id.gt(after.id());
+            case RELEVANCE -> throw new IllegalArgumentException("Relevance cursor holds an offset");
+        };
+    }
+
+    private static NumberExpression<Float> rank(String query) {
+        return Expressions.numberTemplate(Float.class, "event_text_rank({0}, {1})", event.id, query);
+    }
+}
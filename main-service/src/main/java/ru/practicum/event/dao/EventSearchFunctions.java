@@ -0,0 +1,108 @@
+package ru.practicum.event.dao;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.query.ReturnableType;
+import org.hibernate.query.sqm.function.AbstractSqmSelfRenderingFunctionDescriptor;
+import org.hibernate.query.sqm.produce.function.FunctionParameterType;
+import org.hibernate.query.sqm.produce.function.StandardArgumentsValidators;
+import org.hibernate.query.sqm.produce.function.StandardFunctionArgumentTypeResolvers;
+import org.hibernate.query.sqm.produce.function.StandardFunctionReturnTypeResolvers;
+import org.hibernate.sql.ast.SqlAstTranslator;
+import org.hibernate.sql.ast.spi.SqlAppender;
+import org.hibernate.sql.ast.tree.SqlAstNode;
+import org.hibernate.sql.ast.tree.expression.Expression;
+import org.hibernate.type.BasicType;
+import org.hibernate.type.BasicTypeReference;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.spi.TypeConfiguration;
+
+import java.util.List;
+
+// JPQL-функции полнотекстового поиска по событиям. Первый аргумент — e.id: по нему берётся псевдоним таблицы,
+// чтобы сослаться на столбец search_vector, которого нет в сущности (его создаёт EventSearchSchema).
+//   event_text_match(e.id, :query, :pattern) — в PostgreSQL search_vector @@ to_tsquery(:query), что идёт
+//   по GIN-индексу; в остальных СУБД (H2 локального профиля) — LIKE :pattern по аннотации и описанию.
+//   event_text_rank(e.id, :query) — ts_rank для sort=RELEVANCE; вне PostgreSQL всегда 0.
+// Регистрируется через META-INF/services/org.hibernate.boot.model.FunctionContributor
+public class EventSearchFunctions implements FunctionContributor {
+
+    static final String TEXT_CONFIG = "simple";
+
+    @Override
+    public void contributeFunctions(FunctionContributions contributions) {
+        boolean postgres = contributions.getDialect() instanceof PostgreSQLDialect;
+        TypeConfiguration types = contributions.getTypeConfiguration();
+        contributions.getFunctionRegistry().register("event_text_match", new TextMatch(types, postgres));
+        contributions.getFunctionRegistry().register("event_text_rank", new TextRank(types, postgres));
+    }
+
+    private static String alias(SqlAstNode eventId) {
+        return ((Expression) eventId).getColumnReference().getQualifier();
+    }
+
+    private static final class TextMatch extends AbstractSqmSelfRenderingFunctionDescriptor {
+
+        private final boolean postgres;
+
+        private TextMatch(TypeConfiguration types, boolean postgres) {
+            super("event_text_match",
+                    StandardArgumentsValidators.exactly(3),
+                    StandardFunctionReturnTypeResolvers.invariant(basicType(types, StandardBasicTypes.BOOLEAN)),
+                    StandardFunctionArgumentTypeResolvers.invariant(types, FunctionParameterType.ANY,
+                            FunctionParameterType.STRING, FunctionParameterType.STRING));
+            this.postgres = postgres;
+        }
+
+        @Override
+        public void render(SqlAppender sql, List<? extends SqlAstNode> arguments, ReturnableType<?> returnType,
+                           SqlAstTranslator<?> translator) {
+            String alias = alias(arguments.get(0));
+            if (postgres) {
+                sql.append("(" + alias + ".search_vector @@ to_tsquery('" + TEXT_CONFIG + "', ");
+                arguments.get(1).accept(translator);
+                sql.append("))");
+            } else {
+                sql.append("(lower(" + alias + ".annotation) like ");
+                arguments.get(2).accept(translator);
+                sql.append(" or lower(" + alias + ".description) like ");
+                arguments.get(2).accept(translator);
+                sql.append(")");
+            }
+        }
+    }
+
+    private static final class TextRank extends AbstractSqmSelfRenderingFunctionDescriptor {
+
+        private final boolean postgres;
+
+        private TextRank(TypeConfiguration types, boolean postgres) {
+            super("event_text_rank",
+                    StandardArgumentsValidators.exactly(2),
+                    StandardFunctionReturnTypeResolvers.invariant(basicType(types, StandardBasicTypes.FLOAT)),
+                    StandardFunctionArgumentTypeResolvers.invariant(types, FunctionParameterType.ANY,
+                            FunctionParameterType.STRING));
+            this.postgres = postgres;
+        }
+
+        @Override
+        public void render(SqlAppender sql, List<? extends SqlAstNode> arguments, ReturnableType<?> returnType,
+                           SqlAstTranslator<?> translator) {
+            if (postgres) {
+                sql.append("ts_rank(" + alias(arguments.get(0)) + ".search_vector, to_tsquery('"
+                        + TEXT_CONFIG + "', ");
+                arguments.get(1).accept(translator);
+                sql.append("))");
+            } else {
+                sql.append("(0 * length(");
+                arguments.get(1).accept(translator);
+                sql.append("))");
+            }
+        }
+    }
+
+    private static <T> BasicType<T> basicType(TypeConfiguration types, BasicTypeReference<T> reference) {
+        return types.getBasicTypeRegistry().resolve(reference);
+    }
+}
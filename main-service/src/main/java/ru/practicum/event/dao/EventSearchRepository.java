@@ -0,0 +1,13 @@
+package ru.practicum.event.dao;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import ru.practicum.event.model.Event;
+
+import java.util.List;
+
+// Выборка событий по условию, собранному EventPredicates, без запроса общего числа строк
+public interface EventSearchRepository {
+
+    List<Event> findEvents(Predicate where, List<OrderSpecifier<?>> orderBy, long offset, int size);
+}
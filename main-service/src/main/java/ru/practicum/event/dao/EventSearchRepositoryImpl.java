@@ -0,0 +1,30 @@
+package ru.practicum.event.dao;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jakarta.persistence.EntityManager;
+import ru.practicum.event.model.Event;
+
+import java.util.List;
+
+import static ru.practicum.event.model.QEvent.event;
+
+public class EventSearchRepositoryImpl implements EventSearchRepository {
+
+    private final JPAQueryFactory queryFactory;
+
+    public EventSearchRepositoryImpl(EntityManager entityManager) {
+        this.queryFactory = new JPAQueryFactory(entityManager);
+    }
+
+    @Override
+    public List<Event> findEvents(Predicate where, List<OrderSpecifier<?>> orderBy, long offset, int size) {
+        return queryFactory.selectFrom(event)
+                .where(where)
+                .orderBy(orderBy.toArray(OrderSpecifier[]::new))
+                .offset(offset)
+                .limit(size)
+                .fetch();
+    }
+}
@@ -0,0 +1,40 @@
+package ru.practicum.event.dao;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Столбец events.search_vector и GIN-индекс по нему для полнотекстового поиска. Hibernate (ddl-auto=update)
+// не умеет ни генерируемые столбцы, ни GIN, поэтому они создаются здесь после схемы Hibernate и только в PostgreSQL.
+// Вес: заголовок A, аннотация B, описание C. Первое добавление столбца переписывает таблицу events
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class EventSearchSchema {
+
+    private static final String CONFIG = "'" + EventSearchFunctions.TEXT_CONFIG + "'";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void create() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            log.info("Полнотекстовый поиск событий недоступен в {}: используется LIKE", database);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE events ADD COLUMN IF NOT EXISTS search_vector tsvector "
+                + "GENERATED ALWAYS AS ("
+                + "setweight(to_tsvector(" + CONFIG + ", coalesce(title, '')), 'A') || "
+                + "setweight(to_tsvector(" + CONFIG + ", coalesce(annotation, '')), 'B') || "
+                + "setweight(to_tsvector(" + CONFIG + ", coalesce(description, '')), 'C')"
+                + ") STORED");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_events_search_vector ON events USING GIN (search_vector)");
+    }
+}
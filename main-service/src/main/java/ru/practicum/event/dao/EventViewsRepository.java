@@ -0,0 +1,62 @@
+package ru.practicum.event.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class EventViewsRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Пакетное обновление столбца views. Строки, где значение не изменилось, не переписываются,
+    // чтобы не плодить мёртвые версии строк и не трогать индекс; возвращает число изменённых событий
+    @Transactional
+    public int updateViews(Map<Long, Long> views) {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(views.entrySet());
+        // Одинаковый порядок блокировок строк у параллельных обновлений
+        entries.sort(Map.Entry.comparingByKey());
+        int updated = 0;
+        for (int[] batch : jdbcTemplate.batchUpdate("UPDATE events SET views = ? WHERE id = ? AND views <> ?",
+                entries, BATCH_SIZE, (ps, entry) -> {
+                    ps.setLong(1, entry.getValue());
+                    ps.setLong(2, entry.getKey());
+                    ps.setLong(3, entry.getValue());
+                })) {
+            for (int count : batch) {
+                updated += Math.max(count, 0);
+            }
+        }
+        return updated;
+    }
+
+    // Дата публикации опубликованных событий из ids; остальные id в ответ не попадают
+    @Transactional(readOnly = true)
+    public Map<Long, LocalDateTime> findPublishedOn(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Map<Long, LocalDateTime> publishedOn = new HashMap<>();
+        jdbcTemplate.query("SELECT id, published_on FROM events WHERE state = 'PUBLISHED' "
+                        + "AND published_on IS NOT NULL AND id IN (" + placeholders + ")",
+                rs -> {
+                    Timestamp published = rs.getTimestamp(2);
+                    publishedOn.put(rs.getLong(1), published.toLocalDateTime());
+                }, ids.toArray());
+        return publishedOn;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.practicum.event.dao;
+
+import lombok.EqualsAndHashCode;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+// Страница с произвольного смещения: PageRequest.of(from / size, size) при from, не кратном size,
+// начинал бы с ближайшей кратной позиции
+@EqualsAndHashCode(callSuper = true)
+public class OffsetPageRequest extends PageRequest {
+
+    private final long offset;
+
+    public OffsetPageRequest(long offset, int size, Sort sort) {
+        super((int) (offset / size), size, sort);
+        this.offset = offset;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.event.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// Число опубликованных событий под фильтром: всего, по категориям и по платности
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventFacetsDto {
+
+    private long total;
+
+    private Map<Long, Long> categories;
+
+    private long paid;
+
+    private long free;
+}
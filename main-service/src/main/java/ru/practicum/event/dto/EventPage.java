@@ -0,0 +1,18 @@
+package ru.practicum.event.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Страница списка событий и курсор следующей; nextCursor null, если страница последняя
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventPage<T> {
+
+    private List<T> events;
+
+    private String nextCursor;
+}
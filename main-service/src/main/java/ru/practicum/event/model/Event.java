@@ -2,6 +2,7 @@ package ru.practicum.event.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 import ru.practicum.category.model.Category;
 import ru.practicum.user.model.User;
 
@@ -9,7 +10,15 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "events")
+@Table(name = "events", indexes = {
+        // Публичный поиск с sort=VIEWS: ORDER BY views DESC, id среди опубликованных
+        @Index(name = "idx_events_state_views", columnList = "state, views DESC, id"),
+        // Публичный поиск по диапазону дат и с sort=EVENT_DATE: ORDER BY event_date DESC, id DESC
+        @Index(name = "idx_events_state_date", columnList = "state, event_date DESC, id DESC"),
+        // Фильтр users в поиске администратора и события инициатора по возрастанию id
+        @Index(name = "idx_events_initiator", columnList = "initiator_id, id"),
+        @Index(name = "idx_events_category", columnList = "category_id, id")
+})
 public class Event {
 
     @Id
@@ -63,4 +72,9 @@ public class Event {
 
     @Column(nullable = false, length = 120)
     private String title;
+
+    // Просмотры из сервиса статистики, переносятся EventViewsSync и могут отставать
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long views = 0L;
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package ru.practicum.event.model;
+
+import ru.practicum.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.CRC32;
+
+// Позиция продолжения списка событий: ключ сортировки и id последнего выданного события.
+// Следующая страница выбирается условием «после этой позиции», а не смещением, поэтому стоит одинаково
+// на любой глубине. Для sort=RELEVANCE ранг не хранится в строке, и позиция — просто смещение.
+// Клиенту отдаётся непрозрачной строкой вместе с хешем фильтров запроса; курсор другой сортировки
+// или других фильтров отклоняется
+public record EventCursor(Order order, Long id, LocalDateTime eventDate, Long views, Integer offset) {
+
+    private static final String SEPARATOR = "|";
+
+    // id — по возрастанию id; EVENT_DATE — по убыванию даты, затем id; VIEWS — по убыванию просмотров, затем
+    // по возрастанию id
+    public enum Order {
+        ID, EVENT_DATE, VIEWS, RELEVANCE
+    }
+
+    public static EventCursor afterId(Long id) {
+        return new EventCursor(Order.ID, id, null, null, null);
+    }
+
+    public static EventCursor afterEventDate(LocalDateTime eventDate, Long id) {
+        return new EventCursor(Order.EVENT_DATE, id, eventDate, null, null);
+    }
+
+    public static EventCursor afterViews(Long views, Long id) {
+        return new EventCursor(Order.VIEWS, id, null, views, null);
+    }
+
+    public static EventCursor atOffset(int offset) {
+        return new EventCursor(Order.RELEVANCE, null, null, null, offset);
+    }
+
+    // Позиция после события event в порядке order
+    public static EventCursor after(Event event, Order order) {
+        return switch (order) {
+            case EVENT_DATE -> afterEventDate(event.getEventDate(), event.getId());
+            case VIEWS -> afterViews(event.getViews(), event.getId());
+            default -> afterId(event.getId());
+        };
+    }
+
+    // Хеш параметров поиска, кроме позиции: курсор действителен только с теми же параметрами
+    public static String filterHash(Object... filter) {
+        CRC32 crc = new CRC32();
+        crc.update(Arrays.deepToString(filter).getBytes(StandardCharsets.UTF_8));
+        return Long.toString(crc.getValue(), 36);
+    }
+
+    public String encode(String filterHash) {
+        String key = switch (order) {
+            case EVENT_DATE -> eventDate.toString();
+            case VIEWS -> views.toString();
+            case RELEVANCE -> offset.toString();
+            case ID -> "";
+        };
+        String raw = order.name() + SEPARATOR + key + SEPARATOR + (id != null ? id : "") + SEPARATOR + filterHash;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // null, если token не задан
+    public static EventCursor decode(String token, Order expected, String filterHash) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, -1);
+            if (parts.length != 4 || Order.valueOf(parts[0]) != expected) {
+                throw new BadRequestException("Invalid cursor: " + token);
+            }
+            if (!parts[3].equals(filterHash)) {
+                throw new BadRequestException("Cursor was issued for other search parameters: " + token);
+            }
+            return switch (expected) {
+                case ID -> afterId(Long.parseLong(parts[2]));
+                case EVENT_DATE -> afterEventDate(LocalDateTime.parse(parts[1]), Long.parseLong(parts[2]));
+                case VIEWS -> afterViews(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                case RELEVANCE -> atOffset(Math.max(0, Integer.parseInt(parts[1])));
+            };
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new BadRequestException("Invalid cursor: " + token);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.event.model;
+
+import java.time.LocalDateTime;
+
+// Поля опубликованного события, по которым фильтрует PublishedEventIndex
+public record IndexedEvent(Long id, Long categoryId, Boolean paid, LocalDateTime eventDate,
+                           Long participantLimit, Long confirmedRequests) {
+
+    public static IndexedEvent of(Event event) {
+        return new IndexedEvent(event.getId(), event.getCategory().getId(), event.getPaid(), event.getEventDate(),
+                event.getParticipantLimit(), event.getConfirmedRequests());
+    }
+
+    public boolean available() {
+        long limit = participantLimit != null ? participantLimit : 0L;
+        return limit == 0 || (confirmedRequests != null ? confirmedRequests : 0L) < limit;
+    }
+}
@@ -1,6 +1,8 @@
 package ru.practicum.event.service;
 
+import ru.practicum.event.dto.EventFacetsDto;
 import ru.practicum.event.dto.EventFullDto;
+import ru.practicum.event.dto.EventPage;
 import ru.practicum.event.dto.EventShortDto;
 import ru.practicum.event.dto.NewEventDto;
 import ru.practicum.event.dto.UpdateEventAdminRequest;
@@ -25,14 +27,20 @@ public interface EventService {
 
     EventFullDto getPublicEvent(Long eventId);
 
-    List<EventShortDto> getAllByUser(Long userId, Integer from, Integer size);
+    // cursor — непрозрачная позиция из предыдущей страницы; если задан, from не учитывается
+    EventPage<EventShortDto> getAllByUser(Long userId, String cursor, Integer from, Integer size);
 
-    List<EventFullDto> searchForAdmin(List<Long> users, List<EventState> states, List<Long> categories,
-                                      LocalDateTime rangeStart, LocalDateTime rangeEnd, Integer from, Integer size);
+    EventPage<EventFullDto> searchForAdmin(List<Long> users, List<EventState> states, List<Long> categories,
+                                           LocalDateTime rangeStart, LocalDateTime rangeEnd, String cursor,
+                                           Integer from, Integer size);
 
-    List<EventShortDto> searchForUser(String text, List<Long> categories, Boolean paid,
-                                     LocalDateTime rangeStart, LocalDateTime rangeEnd,
-                                     Boolean onlyAvailable, String sort, Integer from, Integer size);
+    EventPage<EventShortDto> searchForUser(String text, List<Long> categories, Boolean paid,
+                                           LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                                           Boolean onlyAvailable, String sort, String cursor,
+                                           Integer from, Integer size);
+
+    EventFacetsDto getFacets(List<Long> categories, Boolean paid, LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                             Boolean onlyAvailable);
 
     List<ParticipationRequestDto> getEventRequests(Long userId, Long eventId);
 
@@ -10,10 +10,14 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.category.model.Category;
 import ru.practicum.category.repository.CategoryRepository;
 import ru.practicum.event.dao.EventRepository;
+import ru.practicum.event.dao.EventPredicates;
+import ru.practicum.event.dao.OffsetPageRequest;
 import ru.practicum.event.dto.*;
 import ru.practicum.event.mapper.EventMapper;
 import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventCursor;
 import ru.practicum.event.model.EventState;
+import ru.practicum.event.model.IndexedEvent;
 import ru.practicum.exception.*;
 import ru.practicum.request.dto.EventRequestStatusUpdateRequest;
 import ru.practicum.request.dto.EventRequestStatusUpdateResult;
@@ -40,6 +44,7 @@ public class EventServiceImpl implements EventService {
     private final CategoryRepository categoryRepository;
     private final RequestRepository requestRepository;
     private final StatClient statClient;
+    private final PublishedEventIndex publishedEventIndex;
 
     @Override
     @Transactional
@@ -99,6 +104,7 @@ public class EventServiceImpl implements EventService {
         }
 
         Event updatedEvent = eventRepository.save(event);
+        publishedEventIndex.onSaved(updatedEvent);
 
         return EventMapper.mapToFullDto(updatedEvent);
     }
@@ -145,6 +151,7 @@ public class EventServiceImpl implements EventService {
         }
 
         Event updatedEvent = eventRepository.save(event);
+        publishedEventIndex.onSaved(updatedEvent);
 
         return EventMapper.mapToFullDto(updatedEvent);
     }
@@ -180,9 +187,11 @@ public class EventServiceImpl implements EventService {
     }
 
     @Override
-    public List<EventShortDto> getAllByUser(Long userId, Integer from, Integer size) {
-        Pageable pageable = PageRequest.of(from / size, size);
-        List<Event> events = eventRepository.findByInitiatorId(userId, pageable).getContent();
+    public EventPage<EventShortDto> getAllByUser(Long userId, String cursor, Integer from, Integer size) {
+        String filterHash = EventCursor.filterHash(userId);
+        EventCursor after = EventCursor.decode(cursor, EventCursor.Order.ID, filterHash);
+        List<Event> events = eventRepository.findByInitiatorIdAndIdGreaterThanOrderByIdAsc(userId,
+                after != null ? after.id() : 0L, page(after, from, size, Sort.unsorted()));
         Map<Long, Long> viewsMap = getEventsViews(events);
 
         List<EventShortDto> eventShortDtos = events.stream()
@@ -193,63 +202,109 @@ public class EventServiceImpl implements EventService {
                 eventShortDto -> eventShortDto.setViews(viewsMap.getOrDefault(eventShortDto.getId(), 0L))
         );
 
-        return eventShortDtos;
+        return new EventPage<>(eventShortDtos,
+                nextCursor(events, EventCursor.Order.ID, events.size() == size, filterHash));
     }
 
     @Override
-    public List<EventFullDto> searchForAdmin(List<Long> users, List<EventState> states, List<Long> categories,
-                                             LocalDateTime rangeStart, LocalDateTime rangeEnd, Integer from, Integer size) {
-        log.info("Поиск событий администратором: users={}, states={}, categories={}, rangeStart={}, rangeEnd={}, from={}, size={}",
-                users, states, categories, rangeStart, rangeEnd, from, size);
+    public EventPage<EventFullDto> searchForAdmin(List<Long> users, List<EventState> states, List<Long> categories,
+                                                  LocalDateTime rangeStart, LocalDateTime rangeEnd, String cursor,
+                                                  Integer from, Integer size) {
+        log.info("Поиск событий администратором: users={}, states={}, categories={}, rangeStart={}, rangeEnd={}, cursor={}, from={}, size={}",
+                users, states, categories, rangeStart, rangeEnd, cursor, from, size);
 
-        Pageable pageable = PageRequest.of(from / size, size, Sort.by("id").ascending());
+        String filterHash = EventCursor.filterHash(users, states, categories, rangeStart, rangeEnd);
+        EventCursor after = EventCursor.decode(cursor, EventCursor.Order.ID, filterHash);
 
-        List<EventState> eventStates = null;
+        List<Event> events = eventRepository.findEvents(
+                EventPredicates.forAdmin(users, states, categories, rangeStart, rangeEnd, after),
+                EventPredicates.byId(), after != null ? 0 : from, size);
 
-        if (states != null && !states.isEmpty()) {
-            eventStates = new ArrayList<>(states);
-        }
-
-        List<Event> events = eventRepository.findEventsWithFilters(users, eventStates, categories, rangeStart, rangeEnd, pageable);
-
-        return events.stream()
+        return new EventPage<>(events.stream()
                 .map(EventMapper::mapToFullDto)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()),
+                nextCursor(events, EventCursor.Order.ID, events.size() == size, filterHash));
     }
 
     @Override
-    public List<EventShortDto> searchForUser(String text, List<Long> categories, Boolean paid,
-                                             LocalDateTime rangeStart, LocalDateTime rangeEnd, Boolean onlyAvailable,
-                                             String sort, Integer from, Integer size) {
-        log.info("Публичный поиск событий: text={}, categories={}, paid={}, rangeStart={}, rangeEnd={}, onlyAvailable={}, sort={}, from={}, size={}",
-                text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, from, size);
+    public EventPage<EventShortDto> searchForUser(String text, List<Long> categories, Boolean paid,
+                                                  LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                                                  Boolean onlyAvailable, String sort, String cursor,
+                                                  Integer from, Integer size) {
+        log.info("Публичный поиск событий: text={}, categories={}, paid={}, rangeStart={}, rangeEnd={}, onlyAvailable={}, sort={}, cursor={}, from={}, size={}",
+                text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, cursor, from, size);
 
         // Валидация дат
         if (rangeStart != null && rangeEnd != null && rangeEnd.isBefore(rangeStart)) {
             throw new BadRequestException("End date must be after start date");
         }
 
-        Pageable pageable;
-        if ("EVENT_DATE".equalsIgnoreCase(sort)) {
-            pageable = PageRequest.of(from / size, size, Sort.by("eventDate").descending());
-        } else if ("VIEWS".equalsIgnoreCase(sort)) {
-            pageable = PageRequest.of(from / size, size, Sort.by("views").descending());
-        } else {
-            pageable = PageRequest.of(from / size, size, Sort.by("id").ascending());
-        }
-
+        // Без rangeStart поиск идёт от текущего момента, поэтому в хеш входит исходное значение
+        String filterHash = EventCursor.filterHash(text, categories, paid, rangeStart, rangeEnd,
+                Boolean.TRUE.equals(onlyAvailable));
         if (rangeStart == null) {
             rangeStart = LocalDateTime.now();
         }
 
-        String textForSearch = (text != null) ? "%" + text.toLowerCase() + "%" : null;
+        String textQuery = toTextQuery(text);
+        String textPattern = textQuery != null ? "%" + text.toLowerCase() + "%" : null;
+
+        if ("RELEVANCE".equalsIgnoreCase(sort) && textQuery != null) {
+            // Ранг не сравним между запросами, поэтому курсор здесь несёт смещение
+            EventCursor at = EventCursor.decode(cursor, EventCursor.Order.RELEVANCE, filterHash);
+            int offset = at != null ? at.offset() : from;
+            List<Event> events = eventRepository.findEvents(
+                    EventPredicates.forPublic(textQuery, textPattern, categories, paid, rangeStart, rangeEnd,
+                            Boolean.TRUE.equals(onlyAvailable), null),
+                    EventPredicates.publicOrder(EventCursor.Order.RELEVANCE, textQuery), offset, size);
+            return new EventPage<>(events.stream().map(EventMapper::mapToShortDto).collect(Collectors.toList()),
+                    events.size() == size ? EventCursor.atOffset(offset + size).encode(filterHash) : null);
+        }
 
-        List<Event> events = eventRepository.findPublishedEventsWithFilters(
-                textForSearch, categories, paid, rangeStart, rangeEnd, onlyAvailable, pageable);
+        EventCursor.Order order;
+        if ("EVENT_DATE".equalsIgnoreCase(sort)) {
+            order = EventCursor.Order.EVENT_DATE;
+        } else if ("VIEWS".equalsIgnoreCase(sort)) {
+            // Столбец views обновляет EventViewsSync, поэтому сортировка и пагинация идут в БД без запроса к статистике
+            order = EventCursor.Order.VIEWS;
+        } else {
+            order = EventCursor.Order.ID;
+        }
+        EventCursor after = EventCursor.decode(cursor, order, filterHash);
+
+        if (textQuery == null && order != EventCursor.Order.VIEWS) {
+            // Запрос только по фильтрам: id берутся из индекса в памяти, из БД читаются лишь строки страницы
+            PublishedEventIndex.Filter filter = new PublishedEventIndex.Filter(categories, paid, rangeStart, rangeEnd,
+                    Boolean.TRUE.equals(onlyAvailable));
+            PublishedEventIndex.Page page = publishedEventIndex.search(filter, order == EventCursor.Order.EVENT_DATE,
+                    after, from, size);
+            List<Event> events = findPublishedInOrder(page.ids(), filter);
+            // Событие, снятое с публикации или изменённое после выборки из индекса, выпадает из страницы,
+            // но она не последняя: курсор ставится после последней записи индекса, даже если выпали все
+            return new EventPage<>(events.stream()
+                    .map(EventMapper::mapToShortDto)
+                    .collect(Collectors.toList()),
+                    nextCursor(page.last(), page.ids().size() == size, filterHash));
+        }
 
-        return events.stream()
+        List<Event> events = eventRepository.findEvents(
+                EventPredicates.forPublic(textQuery, textPattern, categories, paid, rangeStart, rangeEnd,
+                        Boolean.TRUE.equals(onlyAvailable), after),
+                EventPredicates.publicOrder(order, textQuery), after != null ? 0 : from, size);
+        return new EventPage<>(events.stream()
                 .map(EventMapper::mapToShortDto)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()),
+                nextCursor(events, order, events.size() == size, filterHash));
+    }
+
+    @Override
+    public EventFacetsDto getFacets(List<Long> categories, Boolean paid, LocalDateTime rangeStart,
+                                    LocalDateTime rangeEnd, Boolean onlyAvailable) {
+        if (rangeStart != null && rangeEnd != null && rangeEnd.isBefore(rangeStart)) {
+            throw new BadRequestException("End date must be after start date");
+        }
+        return publishedEventIndex.facets(new PublishedEventIndex.Filter(categories, paid,
+                rangeStart != null ? rangeStart : LocalDateTime.now(), rangeEnd, Boolean.TRUE.equals(onlyAvailable)));
     }
 
     @Override
@@ -330,6 +385,7 @@ public class EventServiceImpl implements EventService {
 
         event.setConfirmedRequests(confirmedCount);
         eventRepository.save(event);
+        publishedEventIndex.onSaved(event);
         requestRepository.saveAll(requests);
 
         // если после подтверждения лимит выбит — отклоняем все оставшиеся PENDING
@@ -348,66 +404,71 @@ public class EventServiceImpl implements EventService {
         return result;
     }
 
-    private Long getEventViews(Long eventId) {
-        try {
-            Event event = eventRepository.findById(eventId)
-                    .orElseThrow(() -> new NotFoundException("Событие с id = " + eventId + " не найдено"));
+    // Строки в порядке ids; индекс может отставать от БД, поэтому фильтр проверяется заново
+    private List<Event> findPublishedInOrder(List<Long> ids, PublishedEventIndex.Filter filter) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Event> byId = eventRepository.findEventsByIdIn(ids).stream()
+                .collect(Collectors.toMap(Event::getId, event -> event));
+        return ids.stream()
+                .map(byId::get)
+                .filter(event -> event != null && event.getState() == EventState.PUBLISHED
+                        && filter.test(IndexedEvent.of(event)))
+                .toList();
+    }
 
-            if (event.getPublishedOn() == null) {
-                return 0L;
+    // Запрос to_tsquery из слов текста: каждое слово ищется по префиксу, все слова обязательны.
+    // Пунктуация и операторы tsquery отбрасываются; null, если слов нет
+    private static String toTextQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringJoiner query = new StringJoiner(" & ");
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                query.add(word + ":*");
             }
-
-            LocalDateTime start = event.getPublishedOn();
-            LocalDateTime end = LocalDateTime.now();
-            List<String> uris = List.of("/events/" + eventId);
-
-            return statClient.getStatistics(start, end, uris, true)
-                    .stream()
-                    .findFirst()
-                    .map(stats -> stats.getHits() != null ? stats.getHits() : 0L)
-                    .orElse(0L);
-        } catch (Exception e) {
-            return 0L;
         }
+        return query.length() == 0 ? null : query.toString();
     }
 
-    private Map<Long, Long> getEventsViews(List<Event> events) {
-        try {
-            if (events.isEmpty()) {
-                return Collections.emptyMap();
-            }
+    // С курсором страница начинается сразу после него, без курсора — со смещения from
+    private static Pageable page(EventCursor after, int from, int size, Sort sort) {
+        return after != null ? PageRequest.of(0, size, sort) : new OffsetPageRequest(from, size, sort);
+    }
+
+    // Курсор после последнего события полной страницы; неполная страница — последняя
+    private static String nextCursor(List<Event> events, EventCursor.Order order, boolean full, String filterHash) {
+        return nextCursor(events.isEmpty() ? null : EventCursor.after(events.get(events.size() - 1), order), full,
+                filterHash);
+    }
 
-            LocalDateTime start = events.stream()
-                    .map(Event::getPublishedOn)
-                    .filter(Objects::nonNull)
-                    .min(LocalDateTime::compareTo)
-                    .orElse(LocalDateTime.now().minusYears(1));
-
-            List<String> uris = events.stream()
-                    .map(event -> "/events/" + event.getId())
-                    .collect(Collectors.toList());
-
-            LocalDateTime end = LocalDateTime.now();
-
-            return statClient.getStatistics(start, end, uris, true)
-                    .stream()
-                    .collect(Collectors.toMap(
-                            stats -> extractEventIdFromUri(stats.getUri()),
-                            stats -> stats.getHits() != null ? stats.getHits() : 0L,
-                            (existing, replacement) -> existing
-                    ));
-        } catch (Exception e) {
-            return events.stream()
-                    .collect(Collectors.toMap(Event::getId, event -> 0L));
+    private static String nextCursor(EventCursor last, boolean full, String filterHash) {
+        if (!full || last == null) {
+            return null;
         }
+        return last.encode(filterHash);
     }
 
-    private Long extractEventIdFromUri(String uri) {
-        try {
-            String[] parts = uri.split("/");
-            return Long.parseLong(parts[parts.length - 1]);
-        } catch (Exception e) {
-            throw new ValidationException("Неверный формат URI = " + uri);
+    // Просмотры считаются с момента публикации события, у неопубликованного их нет.
+    // Просмотры берутся из кэша StatClient, поэтому повторные открытия страницы не доходят до сервиса статистики
+    private Map<Long, Long> getEventsViews(List<Event> events) {
+        if (events.isEmpty()) {
+            return Collections.emptyMap();
         }
+
+        Map<String, LocalDateTime> since = new HashMap<>();
+        for (Event event : events) {
+            if (event.getPublishedOn() != null) {
+                since.put("/events/" + event.getId(), event.getPublishedOn());
+            }
+        }
+        Map<String, Long> views = since.isEmpty() ? Collections.emptyMap() : statClient.getViews(since, true);
+
+        return events.stream()
+                .collect(Collectors.toMap(Event::getId,
+                        event -> views.getOrDefault("/events/" + event.getId(), 0L),
+                        (existing, replacement) -> existing));
     }
 }
\ No newline at end of file
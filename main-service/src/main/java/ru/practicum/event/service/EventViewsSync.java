@@ -0,0 +1,115 @@
+package ru.practicum.event.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.event.dao.EventViewsRepository;
+import ru.practicum.statistic.StatClient;
+import ru.practicum.statistic.ViewStatsDto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Переносит просмотры событий из сервиса статистики в столбец events.views.
+// Один запрос по шаблону /events/* показывает, у каких событий появились новые обращения; только для них
+// просмотры пересчитываются с момента публикации, как в карточке события. По этому столбцу публичный поиск
+// сортирует и пагинирует в БД; значение отстаёт не больше чем на sync-interval.
+// Если сервис статистики недоступен, столбец сохраняет последние перенесённые значения
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "ewm.views.sync.enabled", havingValue = "true", matchIfMissing = true)
+public class EventViewsSync {
+
+    private static final String EVENT_URI_PREFIX = "/events/";
+    private static final int BATCH_SIZE = 200;
+
+    private final StatClient statClient;
+    private final EventViewsRepository eventViewsRepository;
+
+    // Число обращений к uri события на момент последнего успешного пересчёта
+    private final Map<Long, Long> lastHits = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${ewm.views.sync.interval:PT60S}",
+            initialDelayString = "${ewm.views.sync.initial-delay:PT10S}")
+    public void sync() {
+        Map<Long, Long> hits = new HashMap<>();
+        for (ViewStatsDto stat : statClient.getHitsByPattern(EVENT_URI_PREFIX + "*")) {
+            Long eventId = parseEventId(stat.getUri());
+            if (eventId != null && stat.getHits() != null) {
+                hits.merge(eventId, stat.getHits(), Long::sum);
+            }
+        }
+        if (hits.isEmpty()) {
+            return;
+        }
+        List<Long> dirty = new ArrayList<>();
+        hits.forEach((eventId, count) -> {
+            if (!count.equals(lastHits.get(eventId))) {
+                dirty.add(eventId);
+            }
+        });
+        lastHits.keySet().retainAll(hits.keySet());
+        int updated = 0;
+        int synced = 0;
+        for (int i = 0; i < dirty.size(); i += BATCH_SIZE) {
+            List<Long> batch = dirty.subList(i, Math.min(i + BATCH_SIZE, dirty.size()));
+            Map<Long, Long> views = loadViews(batch, hits);
+            if (views == null) {
+                break;
+            }
+            updated += views.isEmpty() ? 0 : eventViewsRepository.updateViews(views);
+            synced += views.size();
+        }
+        if (!dirty.isEmpty()) {
+            log.debug("Просмотры событий обновлены: {} из {}, с новыми обращениями {}", updated, synced,
+                    dirty.size());
+        }
+    }
+
+    // Просмотры опубликованных событий из eventIds с момента публикации; null, если сервис статистики
+    // недоступен. Пересчитанные и неопубликованные события запоминаются в lastHits и до новых обращений
+    // не запрашиваются; события из не успевших к сроку частей остаются к следующему запуску
+    private Map<Long, Long> loadViews(List<Long> eventIds, Map<Long, Long> hits) {
+        Map<Long, LocalDateTime> publishedOn = eventViewsRepository.findPublishedOn(eventIds);
+        Map<String, LocalDateTime> since = new HashMap<>();
+        publishedOn.forEach((eventId, published) -> since.put(EVENT_URI_PREFIX + eventId, published));
+        Map<String, Long> views;
+        try {
+            views = since.isEmpty() ? Map.of() : statClient.getViewsSince(since, true);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось получить просмотры событий: {}", e.getMessage());
+            return null;
+        }
+        Map<Long, Long> byEvent = new HashMap<>();
+        for (Long eventId : eventIds) {
+            if (!publishedOn.containsKey(eventId)) {
+                lastHits.put(eventId, hits.get(eventId));
+                continue;
+            }
+            Long count = views.get(EVENT_URI_PREFIX + eventId);
+            if (count != null) {
+                byEvent.put(eventId, count);
+                lastHits.put(eventId, hits.get(eventId));
+            }
+        }
+        return byEvent;
+    }
+
+    private static Long parseEventId(String uri) {
+        if (uri == null || !uri.startsWith(EVENT_URI_PREFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(uri.substring(EVENT_URI_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package ru.practicum.event.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.event.dao.EventRepository;
+import ru.practicum.event.dto.EventFacetsDto;
+import ru.practicum.event.model.Event;
+import ru.practicum.event.model.EventCursor;
+import ru.practicum.event.model.EventState;
+import ru.practicum.event.model.IndexedEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Опубликованные события в памяти для публичного поиска без текста: битовые карты по категориям,
+// платности и доступности и упорядоченный по дате события набор. Событию выдаётся номер слота,
+// освобождённые слоты переиспользуются, поэтому карты плотные и по размеру зависят от числа
+// опубликованных событий, а не от максимального id.
+// Изменения применяются после коммита; раз в rebuild-interval индекс строится заново из БД,
+// что подбирает изменения других экземпляров main-service
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PublishedEventIndex {
+
+    private final EventRepository eventRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Bitmaps bitmaps = new Bitmaps();
+    // Изменения, закоммиченные во время перестроения: применяются к новому индексу перед заменой
+    private List<Change> changesDuringRebuild;
+
+    @PostConstruct
+    public void load() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${ewm.events.index.rebuild-interval:PT10M}",
+            initialDelayString = "${ewm.events.index.rebuild-interval:PT10M}")
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Bitmaps fresh = new Bitmaps();
+        boolean loaded = false;
+        try {
+            eventRepository.findPublishedForIndex().forEach(fresh::put);
+            loaded = true;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                // Если загрузка не удалась, остаётся прежний индекс, в который изменения уже применены
+                if (loaded) {
+                    for (Change change : changesDuringRebuild) {
+                        change.applyTo(fresh);
+                    }
+                    bitmaps = fresh;
+                }
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        log.info("Индекс опубликованных событий построен: {} событий", fresh.slots.size());
+    }
+
+    // Учитывает сохранённое событие после коммита текущей транзакции: опубликованное попадает в индекс,
+    // остальные из него удаляются
+    public void onSaved(Event event) {
+        Change change = new Change(event.getId(),
+                event.getState() == EventState.PUBLISHED ? IndexedEvent.of(event) : null);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(change);
+            }
+        });
+    }
+
+    // Страница результатов: по возрастанию id или, если byEventDate, по убыванию даты события и id.
+    // Страница начинается после позиции after, а без неё — со смещения from
+    public Page search(Filter filter, boolean byEventDate, EventCursor after, int from, int size) {
+        lock.readLock().lock();
+        try {
+            Bitmaps current = bitmaps;
+            BitSet matches = current.match(filter);
+            List<Long> page = new ArrayList<>(size);
+            int skip = after == null ? from : 0;
+            if (byEventDate) {
+                NavigableSet<DateSlot> range = current.dateRange(filter);
+                if (after != null) {
+                    range = range.headSet(new DateSlot(after.eventDate(), after.id(), -1), false);
+                }
+                int skipped = 0;
+                for (DateSlot entry : range.descendingSet()) {
+                    if (!matches.get(entry.slot())) {
+                        continue;
+                    }
+                    if (skipped++ < skip) {
+                        continue;
+                    }
+                    page.add(entry.id());
+                    if (page.size() == size) {
+                        return new Page(page, EventCursor.afterEventDate(entry.date(), entry.id()));
+                    }
+                }
+                return new Page(page, null);
+            }
+
+            // Обход слотов по возрастанию id останавливается на полной странице
+            NavigableMap<Long, Integer> byId = after != null ? current.slots.tailMap(after.id(), false) : current.slots;
+            int skipped = 0;
+            for (int slot : byId.values()) {
+                if (!matches.get(slot) || !current.inDateRange(slot, filter)) {
+                    continue;
+                }
+                if (skipped++ < skip) {
+                    continue;
+                }
+                page.add(current.ids[slot]);
+                if (page.size() == size) {
+                    return new Page(page, EventCursor.afterId(current.ids[slot]));
+                }
+            }
+            return new Page(page, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Число событий под фильтром по категориям и платности за один проход по совпадениям
+    public EventFacetsDto facets(Filter filter) {
+        lock.readLock().lock();
+        try {
+            Bitmaps current = bitmaps;
+            BitSet matches = current.match(filter);
+            Map<Long, Long> categories = new HashMap<>();
+            long total = 0;
+            long paid = 0;
+            for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+                if (!current.inDateRange(slot, filter)) {
+                    continue;
+                }
+                total++;
+                categories.merge(current.categoryOf[slot], 1L, Long::sum);
+                if (current.paid.get(slot)) {
+                    paid++;
+                }
+            }
+            return new EventFacetsDto(total, categories, paid, total - paid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(Change change) {
+        lock.writeLock().lock();
+        try {
+            change.applyTo(bitmaps);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // last — позиция последней записи полной страницы, null у неполной: строки страницы перепроверяются по БД
+    // и могут выпасть, а продолжение всё равно идёт после последней записи индекса
+    public record Page(List<Long> ids, EventCursor last) {
+    }
+
+    // Фильтр публичного поиска: null или пустой список categories и null paid — без ограничения
+    public record Filter(List<Long> categories, Boolean paid, LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                         boolean onlyAvailable) {
+
+        // Те же условия для отдельного события, например строки, прочитанной из БД после поиска по индексу
+        public boolean test(IndexedEvent event) {
+            return (categories == null || categories.isEmpty() || categories.contains(event.categoryId()))
+                    && (paid == null || paid == Boolean.TRUE.equals(event.paid()))
+                    && (rangeStart == null || !event.eventDate().isBefore(rangeStart))
+                    && (rangeEnd == null || !event.eventDate().isAfter(rangeEnd))
+                    && (!onlyAvailable || event.available());
+        }
+    }
+
+    // event == null — событие больше не опубликовано
+    private record Change(Long eventId, IndexedEvent event) {
+
+        void applyTo(Bitmaps target) {
+            if (event == null) {
+                target.remove(eventId);
+            } else {
+                target.put(event);
+            }
+        }
+    }
+
+    // Упорядочены по дате и id, как строки в БД при sort=EVENT_DATE; в границах поиска slot не участвует
+    private record DateSlot(LocalDateTime date, long id, int slot) implements Comparable<DateSlot> {
+
+        @Override
+        public int compareTo(DateSlot other) {
+            int byDate = date.compareTo(other.date);
+            return byDate != 0 ? byDate : Long.compare(id, other.id);
+        }
+    }
+
+    private static final class Bitmaps {
+
+        private final TreeMap<Long, Integer> slots = new TreeMap<>();
+        private long[] ids = new long[64];
+        private long[] categoryOf = new long[64];
+        private LocalDateTime[] dateOf = new LocalDateTime[64];
+
+        private final BitSet occupied = new BitSet();
+        private final BitSet paid = new BitSet();
+        private final BitSet available = new BitSet();
+        private final Map<Long, BitSet> byCategory = new HashMap<>();
+        private final TreeSet<DateSlot> byDate = new TreeSet<>();
+
+        void put(IndexedEvent event) {
+            remove(event.id());
+            int slot = occupied.nextClearBit(0);
+            if (slot == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                categoryOf = Arrays.copyOf(categoryOf, capacity);
+                dateOf = Arrays.copyOf(dateOf, capacity);
+            }
+            slots.put(event.id(), slot);
+            ids[slot] = event.id();
+            categoryOf[slot] = event.categoryId();
+            dateOf[slot] = event.eventDate();
+            occupied.set(slot);
+            paid.set(slot, Boolean.TRUE.equals(event.paid()));
+            available.set(slot, event.available());
+            byCategory.computeIfAbsent(event.categoryId(), id -> new BitSet()).set(slot);
+            byDate.add(new DateSlot(event.eventDate(), event.id(), slot));
+        }
+
+        void remove(Long eventId) {
+            Integer slot = slots.remove(eventId);
+            if (slot == null) {
+                return;
+            }
+            occupied.clear(slot);
+            paid.clear(slot);
+            available.clear(slot);
+            BitSet category = byCategory.get(categoryOf[slot]);
+            category.clear(slot);
+            if (category.isEmpty()) {
+                byCategory.remove(categoryOf[slot]);
+            }
+            byDate.remove(new DateSlot(dateOf[slot], ids[slot], slot));
+            dateOf[slot] = null;
+        }
+
+        // Совпадения по всем условиям, кроме дат
+        BitSet match(Filter filter) {
+            BitSet matches = (BitSet) occupied.clone();
+            if (filter.categories() != null && !filter.categories().isEmpty()) {
+                BitSet inCategories = new BitSet();
+                for (Long categoryId : filter.categories()) {
+                    BitSet category = byCategory.get(categoryId);
+                    if (category != null) {
+                        inCategories.or(category);
+                    }
+                }
+                matches.and(inCategories);
+            }
+            if (filter.paid() != null) {
+                if (filter.paid()) {
+                    matches.and(paid);
+                } else {
+                    matches.andNot(paid);
+                }
+            }
+            if (filter.onlyAvailable()) {
+                matches.and(available);
+            }
+            return matches;
+        }
+
+        boolean inDateRange(int slot, Filter filter) {
+            LocalDateTime date = dateOf[slot];
+            return (filter.rangeStart() == null || !date.isBefore(filter.rangeStart()))
+                    && (filter.rangeEnd() == null || !date.isAfter(filter.rangeEnd()));
+        }
+
+        NavigableSet<DateSlot> dateRange(Filter filter) {
+            if (filter.rangeStart() == null && filter.rangeEnd() == null) {
+                return byDate;
+            }
+            if (filter.rangeEnd() == null) {
+                return byDate.tailSet(new DateSlot(filter.rangeStart(), Long.MIN_VALUE, -1), true);
+            }
+            if (filter.rangeStart() == null) {
+                return byDate.headSet(new DateSlot(filter.rangeEnd(), Long.MAX_VALUE, -1), true);
+            }
+            if (filter.rangeEnd().isBefore(filter.rangeStart())) {
+                return new TreeSet<>();
+            }
+            return byDate.subSet(new DateSlot(filter.rangeStart(), Long.MIN_VALUE, -1), true,
+                    new DateSlot(filter.rangeEnd(), Long.MAX_VALUE, -1), true);
+        }
+    }
+}
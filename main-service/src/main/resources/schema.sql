@@ -28,11 +28,17 @@ CREATE TABLE IF NOT EXISTS events (
     request_moderation  BOOLEAN NOT NULL DEFAULT TRUE,
     state               VARCHAR(10) NOT NULL,
     title               VARCHAR(120) NOT NULL,
+    views               BIGINT NOT NULL DEFAULT 0,
     CONSTRAINT fk_events_category FOREIGN KEY (category_id) REFERENCES categories(id),
     CONSTRAINT fk_events_initiator FOREIGN KEY (initiator_id) REFERENCES users(id),
     CONSTRAINT chk_events_state CHECK (state IN ('PENDING', 'PUBLISHED', 'CANCELED'))
 );
 
+CREATE INDEX IF NOT EXISTS idx_events_state_views ON events (state, views DESC, id);
+CREATE INDEX IF NOT EXISTS idx_events_state_date ON events (state, event_date DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_events_initiator ON events (initiator_id, id);
+CREATE INDEX IF NOT EXISTS idx_events_category ON events (category_id, id);
+
 CREATE TABLE IF NOT EXISTS participation_requests (
     id            BIGSERIAL PRIMARY KEY,
     created       TIMESTAMP NOT NULL DEFAULT NOW(),
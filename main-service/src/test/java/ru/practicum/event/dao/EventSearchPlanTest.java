@@ -0,0 +1,169 @@
+package ru.practicum.event.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.practicum.event.model.EventCursor;
+import ru.practicum.event.model.EventState;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Планы поиска событий на PostgreSQL: для частых комбинаций фильтров запрос, собранный EventPredicates,
+// идёт по своему индексу, а не перебором events. Планы настоящих запросов с их параметрами
+// пишет в лог сервера auto_explain
+@SpringBootTest(properties = {
+        "stat.server.url=http://localhost:9",
+        "ewm.views.sync.enabled=false",
+        "spring.jpa.show-sql=false"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class EventSearchPlanTest {
+
+    private static final long PLAN_TIMEOUT_MILLIS = 10_000;
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withCommand("postgres", "-c", "fsync=off",
+                    "-c", "shared_preload_libraries=auto_explain",
+                    "-c", "auto_explain.log_min_duration=0");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 50 000 событий: 1000 инициаторов, 200 категорий, три состояния, даты на ±500 дней от текущей,
+    // слово jazzfest в аннотации каждого тысячного события
+    @BeforeEach
+    void seed() {
+        if (jdbcTemplate.queryForObject("SELECT count(*) FROM events", Long.class) > 0) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO users (email, name)"
+                + " SELECT 'user' || g || '@mail.ru', 'user' || g FROM generate_series(1, 1000) g");
+        jdbcTemplate.update("INSERT INTO categories (name)"
+                + " SELECT 'category' || g FROM generate_series(1, 200) g");
+        jdbcTemplate.update("""
+                INSERT INTO events (annotation, description, event_date, created_on, published_on,
+                                    confirmed_requests, category_id, initiator_id, lat, lon, paid,
+                                    participant_limit, request_moderation, state, title, views)
+                SELECT CASE WHEN g % 1000 = 0 THEN 'jazzfest on the river' ELSE 'annotation of event ' || g END,
+                       'description of event ' || g,
+                       now() + (g % 1000 - 500) * interval '1 day' + g * interval '1 second',
+                       now(), now(), 0, g % 200 + 1, g % 1000 + 1, 55.75, 37.62, g % 2 = 0, 0, true,
+                       (ARRAY['PENDING', 'PUBLISHED', 'CANCELED'])[g % 3 + 1],
+                       'event ' || g, (g * 7919) % 100000
+                FROM generate_series(1, 50000) g
+                """);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void createsSearchIndexes() {
+        Map<String, String> indexes = new HashMap<>();
+        jdbcTemplate.query("SELECT indexname, indexdef FROM pg_indexes WHERE tablename = 'events'",
+                rs -> {
+                    indexes.put(rs.getString("indexname"), rs.getString("indexdef"));
+                });
+
+        assertThat(indexes.get("idx_events_state_views")).endsWith("USING btree (state, views DESC, id)");
+        assertThat(indexes.get("idx_events_state_date")).endsWith("USING btree (state, event_date DESC, id DESC)");
+        assertThat(indexes.get("idx_events_initiator")).endsWith("USING btree (initiator_id, id)");
+        assertThat(indexes.get("idx_events_category")).endsWith("USING btree (category_id, id)");
+        assertThat(indexes.get("idx_events_search_vector")).endsWith("USING gin (search_vector)");
+    }
+
+    @Test
+    void adminSearchByUsersUsesInitiatorIndex() {
+        String plan = planOf(() -> eventRepository.findEvents(
+                EventPredicates.forAdmin(List.of(7L, 8L), null, null, null, null, null),
+                EventPredicates.byId(), 0, 10));
+
+        assertThat(plan).contains("idx_events_initiator").doesNotContain("Seq Scan on events");
+    }
+
+    @Test
+    void adminSearchByCategoryUsesCategoryIndex() {
+        String plan = planOf(() -> eventRepository.findEvents(
+                EventPredicates.forAdmin(null, null, List.of(5L), null, null, EventCursor.afterId(1000L)),
+                EventPredicates.byId(), 0, 10));
+
+        assertThat(plan).contains("idx_events_category").doesNotContain("Seq Scan on events");
+    }
+
+    @Test
+    void adminSearchByStateAndDatesUsesStateDateIndex() {
+        LocalDateTime from = LocalDateTime.now().plusDays(10);
+        String plan = planOf(() -> eventRepository.findEvents(
+                EventPredicates.forAdmin(null, List.of(EventState.PUBLISHED), null, from, from.plusDays(1), null),
+                EventPredicates.byId(), 0, 10));
+
+        assertThat(plan).contains("idx_events_state_date").doesNotContain("Seq Scan on events");
+    }
+
+    @Test
+    void publicSearchSortedByViewsUsesStateViewsIndex() {
+        String plan = planOf(() -> eventRepository.findEvents(
+                EventPredicates.forPublic(null, null, null, null, LocalDateTime.now(), null, false,
+                        EventCursor.afterViews(50_000L, 100L)),
+                EventPredicates.publicOrder(EventCursor.Order.VIEWS, null), 0, 10));
+
+        assertThat(plan).contains("idx_events_state_views").doesNotContain("Seq Scan on events");
+    }
+
+    @Test
+    void publicTextSearchUsesSearchVectorIndex() {
+        String plan = planOf(() -> eventRepository.findEvents(
+                EventPredicates.forPublic("jazzfest:*", "%jazzfest%", null, null, LocalDateTime.now(), null, false,
+                        null),
+                EventPredicates.publicOrder(EventCursor.Order.ID, "jazzfest:*"), 0, 10));
+
+        assertThat(plan).contains("idx_events_search_vector").doesNotContain("Seq Scan on events");
+    }
+
+    // План запроса к events, записанный auto_explain после выполнения query
+    private String planOf(Runnable query) {
+        int mark = POSTGRES.getLogs().length();
+        query.run();
+
+        // Лог контейнера читается через Docker и может отставать от выполнения запроса
+        long deadline = System.currentTimeMillis() + PLAN_TIMEOUT_MILLIS;
+        while (true) {
+            String logs = POSTGRES.getLogs().substring(mark);
+            int text = logs.lastIndexOf("from events");
+            if (text >= 0 && logs.indexOf("Scan", text) >= 0) {
+                int next = logs.indexOf("LOG:", text);
+                return logs.substring(logs.lastIndexOf("plan:", text), next >= 0 ? next : logs.length());
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("auto_explain did not log the plan:\n" + logs);
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError("Interrupted while waiting for the plan", e);
+            }
+        }
+    }
+}
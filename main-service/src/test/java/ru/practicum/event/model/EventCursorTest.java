@@ -0,0 +1,102 @@
+package ru.practicum.event.model;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventCursorTest {
+
+    private static final String HASH = EventCursor.filterHash("jazz", List.of(1L, 2L), true);
+
+    @Test
+    void roundTripsEveryOrder() {
+        List<EventCursor> cursors = List.of(
+                EventCursor.afterId(42L),
+                EventCursor.afterEventDate(LocalDateTime.of(2024, 5, 1, 18, 30, 15), 42L),
+                EventCursor.afterViews(1_000_000L, 42L),
+                EventCursor.atOffset(60));
+
+        for (EventCursor cursor : cursors) {
+            assertThat(EventCursor.decode(cursor.encode(HASH), cursor.order(), HASH)).isEqualTo(cursor);
+        }
+    }
+
+    @Test
+    void tokenIsUrlSafe() {
+        String token = EventCursor.afterEventDate(LocalDateTime.of(2024, 5, 1, 18, 30), Long.MAX_VALUE).encode(HASH);
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void missingTokenMeansFirstPage() {
+        assertThat(EventCursor.decode(null, EventCursor.Order.ID, HASH)).isNull();
+        assertThat(EventCursor.decode("", EventCursor.Order.ID, HASH)).isNull();
+        assertThat(EventCursor.decode("  ", EventCursor.Order.ID, HASH)).isNull();
+    }
+
+    @Test
+    void rejectsCursorOfOtherOrder() {
+        String token = EventCursor.afterViews(10L, 42L).encode(HASH);
+
+        assertThatThrownBy(() -> EventCursor.decode(token, EventCursor.Order.EVENT_DATE, HASH))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageStartingWith("Invalid cursor");
+    }
+
+    @Test
+    void rejectsCursorOfOtherFilters() {
+        String token = EventCursor.afterId(42L).encode(HASH);
+        String otherHash = EventCursor.filterHash("rock", List.of(1L, 2L), true);
+
+        assertThat(otherHash).isNotEqualTo(HASH);
+        assertThatThrownBy(() -> EventCursor.decode(token, EventCursor.Order.ID, otherHash))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageStartingWith("Cursor was issued for other search parameters");
+    }
+
+    @Test
+    void rejectsGarbage() {
+        List<String> tokens = List.of(
+                "not base64!",
+                encodeRaw("ID|"),
+                encodeRaw("SIDEWAYS||42|" + HASH),
+                encodeRaw("ID||forty-two|" + HASH),
+                encodeRaw("ID||42|" + HASH + "|extra"));
+
+        for (String token : tokens) {
+            assertThatThrownBy(() -> EventCursor.decode(token, EventCursor.Order.ID, HASH))
+                    .isInstanceOf(BadRequestException.class)
+                    .hasMessageStartingWith("Invalid cursor");
+        }
+        assertThatThrownBy(() -> EventCursor.decode(encodeRaw("EVENT_DATE|yesterday|42|" + HASH),
+                EventCursor.Order.EVENT_DATE, HASH))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageStartingWith("Invalid cursor");
+    }
+
+    @Test
+    void clampsNegativeOffset() {
+        String token = encodeRaw("RELEVANCE|-20||" + HASH);
+
+        assertThat(EventCursor.decode(token, EventCursor.Order.RELEVANCE, HASH)).isEqualTo(EventCursor.atOffset(0));
+    }
+
+    @Test
+    void filterHashDependsOnFilterValuesAndOrder() {
+        assertThat(EventCursor.filterHash("jazz", List.of(1L, 2L), true)).isEqualTo(HASH);
+        assertThat(EventCursor.filterHash("jazz", List.of(2L, 1L), true)).isNotEqualTo(HASH);
+        assertThat(EventCursor.filterHash("jazz", List.of(1L, 2L), null)).isNotEqualTo(HASH);
+    }
+
+    private static String encodeRaw(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
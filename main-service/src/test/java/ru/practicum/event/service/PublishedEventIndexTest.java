@@ -0,0 +1,64 @@
+package ru.practicum.event.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.event.dao.EventRepository;
+import ru.practicum.event.model.EventCursor;
+import ru.practicum.event.model.IndexedEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PublishedEventIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 12, 0);
+    private static final PublishedEventIndex.Filter ALL = new PublishedEventIndex.Filter(null, null, null, null,
+            false);
+
+    private PublishedEventIndex index;
+
+    // События 1..5 в категориях 1 и 2 по очереди; дата события убывает с ростом id
+    @BeforeEach
+    void load() {
+        List<IndexedEvent> events = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            events.add(new IndexedEvent(id, id % 2 + 1, false, START.minusDays(id), 0L, 0L));
+        }
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findPublishedForIndex()).thenReturn(events);
+        index = new PublishedEventIndex(eventRepository);
+        index.load();
+    }
+
+    @Test
+    void fullPageEndsAtLastIndexEntry() {
+        PublishedEventIndex.Page page = index.search(ALL, false, null, 0, 2);
+
+        assertThat(page.ids()).containsExactly(1L, 2L);
+        assertThat(page.last()).isEqualTo(EventCursor.afterId(2L));
+        assertThat(index.search(ALL, false, page.last(), 0, 2).ids()).containsExactly(3L, 4L);
+    }
+
+    @Test
+    void fullPageByEventDateEndsAtLastIndexEntry() {
+        PublishedEventIndex.Page page = index.search(ALL, true, null, 1, 2);
+
+        assertThat(page.ids()).containsExactly(2L, 3L);
+        assertThat(page.last()).isEqualTo(EventCursor.afterEventDate(START.minusDays(3), 3L));
+        assertThat(index.search(ALL, true, page.last(), 0, 2).ids()).containsExactly(4L, 5L);
+    }
+
+    @Test
+    void partialPageHasNoPosition() {
+        PublishedEventIndex.Filter secondCategory = new PublishedEventIndex.Filter(List.of(2L), null, null, null,
+                false);
+
+        assertThat(index.search(secondCategory, false, EventCursor.afterId(1L), 0, 3)).isEqualTo(
+                new PublishedEventIndex.Page(List.of(3L, 5L), null));
+    }
+}
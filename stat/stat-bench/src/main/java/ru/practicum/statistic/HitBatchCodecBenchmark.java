@@ -0,0 +1,103 @@
+package ru.practicum.statistic;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Кодирование и разбор пачки хитов POST /hits/batch: JSON против HitBatchCodec.
+// JSON-разбор повторяет сервер: Jackson и @JsonFormat для timestamp.
+// Uri — около сотни событий, как у реального трафика /events/{id}
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitBatchCodecBenchmark {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final TypeReference<List<JsonHit>> JSON_HITS = new TypeReference<>() {
+    };
+
+    @Param({"100", "500"})
+    private int batchSize;
+
+    // Как ObjectMapper Spring Boot: неизвестные поля (id) пропускаются
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private List<EndpointHitDto> hits;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        hits = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            hits.add(EndpointHitDto.builder()
+                    .app("ewm-main-service")
+                    .uri("/events/" + (i * 31 % 97))
+                    .ip("192.168." + (i / 256) + "." + (i % 256))
+                    .timestamp(start.plusSeconds(i).format(FORMATTER))
+                    .build());
+        }
+        json = objectMapper.writeValueAsBytes(hits);
+        binary = HitBatchCodec.encode(hits);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return objectMapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return HitBatchCodec.encode(hits);
+    }
+
+    @Benchmark
+    public List<JsonHit> decodeJson() throws IOException {
+        return objectMapper.readValue(json, JSON_HITS);
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole blackhole) {
+        HitBatchCodec.decode(binary, (app, uri, ip, timestamp) -> {
+            blackhole.consume(app);
+            blackhole.consume(uri);
+            blackhole.consume(ip);
+            blackhole.consume(timestamp);
+        });
+    }
+
+    // Поля, которые сервер читает из JSON-тела /hits/batch
+    public static class JsonHit {
+        public String app;
+        public String uri;
+        public String ip;
+        @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+        public LocalDateTime timestamp;
+    }
+}
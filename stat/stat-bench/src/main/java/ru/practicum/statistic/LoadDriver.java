@@ -0,0 +1,125 @@
+package ru.practicum.statistic;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Нагрузка на запущенный сервис в замкнутом цикле: concurrency клиентов шлют запрос за запросом.
+// HttpClient по HTTP/1.1 держит соединение на каждый запрос в полёте, так что на сервер приходит
+// concurrency одновременных соединений. Считаются только ответы, полученные после прогрева.
+// Запуск: java -cp stat/stat-bench/target/benchmarks.jar ru.practicum.statistic.LoadDriver
+//         <url> <concurrency> <warmup-seconds> <seconds> [json-body-file]
+// С json-body-file шлётся POST с этим телом, без него — GET
+public final class LoadDriver {
+
+    private LoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: LoadDriver <url> <concurrency> <warmup-seconds> <seconds> [json-body-file]");
+            System.exit(2);
+        }
+        URI uri = URI.create(args[0]);
+        int concurrency = Integer.parseInt(args[1]);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(args[2]));
+        long measureNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(args[3]));
+        byte[] body = args.length > 4 ? Files.readAllBytes(Path.of(args[4])) : null;
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30));
+        if (body != null) {
+            request.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+
+        long measureFrom = System.nanoTime() + warmupNanos;
+        long measureTo = measureFrom + measureNanos;
+        List<Result> results = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .connectTimeout(Duration.ofSeconds(10))
+                     .executor(clients)
+                     .build()) {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(clients.submit(() -> run(client, request.build(), measureFrom, measureTo)));
+            }
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        }
+
+        int requests = results.stream().mapToInt(result -> result.count).sum();
+        long errors = results.stream().mapToLong(result -> result.errors).sum();
+        long[] latencies = new long[requests];
+        int filled = 0;
+        for (Result result : results) {
+            System.arraycopy(result.latencies, 0, latencies, filled, result.count);
+            filled += result.count;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("concurrency=%d requests=%d throughput=%.0f/s p50=%.1fms p99=%.1fms max=%.1fms errors=%d%n",
+                concurrency, requests, requests / (measureNanos / 1e9),
+                millis(latencies, 0.50), millis(latencies, 0.99), millis(latencies, 1.0), errors);
+    }
+
+    private static Result run(HttpClient client, HttpRequest request, long measureFrom, long measureTo) {
+        Result result = new Result();
+        while (true) {
+            long started = System.nanoTime();
+            if (started >= measureTo) {
+                return result;
+            }
+            boolean ok;
+            try {
+                ok = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 400;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+            long finished = System.nanoTime();
+            if (started >= measureFrom && finished <= measureTo) {
+                result.add(finished - started, ok);
+            }
+        }
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    private static final class Result {
+
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        void add(long latencyNanos, boolean ok) {
+            if (!ok) {
+                errors++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+#!/usr/bin/env bash
+# Пропускная способность stat-server на платформенных и на виртуальных потоках (VIRTUAL_THREADS_ENABLED).
+# Для каждого режима сервер запускается заново с профилем local (H2 в памяти) и кэшем /stats выключенным,
+# затем LoadDriver нагружает чтение GET /stats и запись POST /hit при каждом уровне CONCURRENCY.
+# Перед замерами каждой операции сервер прогревается SERVER_WARMUP секунд. Все чтения идут до записей:
+# записи добавляют хиты, и /stats по сырым хитам замедлялся бы от замера к замеру.
+# После замеров печатается метрика закреплений jvm.threads.virtual.pinned, если они были.
+# Сборка перед запуском: mvn -B package -DskipTests -pl stat/stat-server,stat/stat-bench -am
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+SERVER_JAR=stat-server/target/stat-server-0.0.1-SNAPSHOT.jar
+BENCH_JAR=stat-bench/target/benchmarks.jar
+PORT=${PORT:-9190}
+CONCURRENCY=${CONCURRENCY:-"50 200 1000"}
+WARMUP=${WARMUP:-5}
+DURATION=${DURATION:-15}
+SERVER_WARMUP=${SERVER_WARMUP:-30}
+BASE="http://localhost:$PORT"
+WORK=$(mktemp -d)
+SERVER_PID=
+
+stop_server() {
+    if [ -n "$SERVER_PID" ]; then
+        kill "$SERVER_PID" 2>/dev/null || true
+        wait "$SERVER_PID" 2>/dev/null || true
+        SERVER_PID=
+    fi
+}
+trap 'stop_server; rm -rf "$WORK"' EXIT
+
+# 20 000 хитов по 200 uri с 1000 адресов за последние сутки
+{
+    printf '['
+    for i in $(seq 0 19999); do
+        [ "$i" -gt 0 ] && printf ','
+        printf '{"app":"ewm-main-service","uri":"/events/%d","ip":"10.0.%d.%d","timestamp":"%s"}' \
+            $((i % 200)) $((i % 1000 / 250)) $((i % 250)) "$(date -d "-$((i % 1440)) minutes" '+%Y-%m-%d %H:%M:%S')"
+    done
+    printf ']'
+} > "$WORK/seed.json"
+printf '{"app":"ewm-main-service","uri":"/events/1","ip":"10.1.0.1","timestamp":"%s"}' \
+    "$(date '+%Y-%m-%d %H:%M:%S')" > "$WORK/hit.json"
+START=$(date -d '-2 days' '+%Y-%m-%d%%20%H:%M:%S')
+END=$(date -d '+1 day' '+%Y-%m-%d%%20%H:%M:%S')
+STATS="$BASE/stats?start=$START&end=$END&uris=/events/1&uris=/events/2&uris=/events/3&unique=true"
+
+for virtual in false true; do
+    VIRTUAL_THREADS_ENABLED=$virtual java -jar "$SERVER_JAR" \
+        --spring.profiles.active=local \
+        --server.port="$PORT" \
+        --stat.cache.enabled=false \
+        --spring.jpa.show-sql=false \
+        --spring.h2.console.enabled=false \
+        --logging.level.root=WARN \
+        --logging.level.ru.practicum.statistic=WARN > "$WORK/server-$virtual.log" 2>&1 &
+    SERVER_PID=$!
+    until curl -sf "$BASE/actuator/health" > /dev/null; do
+        if ! kill -0 "$SERVER_PID" 2>/dev/null; then
+            cat "$WORK/server-$virtual.log"
+            exit 1
+        fi
+        sleep 1
+    done
+    curl -sf -H 'Content-Type: application/json' --data-binary "@$WORK/seed.json" "$BASE/hits/batch" > /dev/null
+
+    java -cp "$BENCH_JAR" ru.practicum.statistic.LoadDriver "$STATS" 200 0 "$SERVER_WARMUP" > /dev/null
+    for concurrency in $CONCURRENCY; do
+        printf 'virtual=%s read  ' "$virtual"
+        java -cp "$BENCH_JAR" ru.practicum.statistic.LoadDriver "$STATS" "$concurrency" "$WARMUP" "$DURATION"
+    done
+    java -cp "$BENCH_JAR" ru.practicum.statistic.LoadDriver "$BASE/hit" 200 0 "$SERVER_WARMUP" "$WORK/hit.json" \
+        > /dev/null
+    for concurrency in $CONCURRENCY; do
+        printf 'virtual=%s write ' "$virtual"
+        java -cp "$BENCH_JAR" ru.practicum.statistic.LoadDriver "$BASE/hit" "$concurrency" "$WARMUP" "$DURATION" \
+            "$WORK/hit.json"
+    done
+    printf 'virtual=%s pinned ' "$virtual"
+    curl -sf "$BASE/actuator/metrics/jvm.threads.virtual.pinned" || printf 'none'
+    printf '\n'
+    grep -A8 'закреплён за носителем' "$WORK/server-$virtual.log" | head -40 || true
+    stop_server
+done
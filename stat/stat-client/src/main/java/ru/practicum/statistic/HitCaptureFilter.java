@@ -0,0 +1,107 @@
+package ru.practicum.statistic;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Записывает хиты GET-запросов, uri которых подходит под stat.client.capture.rules, после ответа.
+// Правило — «шаблон=доля»: * заменяет один сегмент пути, /** в конце — любой остаток,
+// доля от 0 до 1 задаёт выборку. Побеждает первое подходящее правило. Ответы 4xx и 5xx не записываются.
+@Slf4j
+@Component
+@ConditionalOnWebApplication
+@ConditionalOnProperty(name = "stat.client.capture.enabled", havingValue = "true", matchIfMissing = true)
+public class HitCaptureFilter extends OncePerRequestFilter {
+
+    private final StatClient statClient;
+    private final UriRule[] rules;
+
+    public HitCaptureFilter(StatClient statClient,
+                            @Value("${stat.client.capture.rules:}") List<String> rules) {
+        this.statClient = statClient;
+        this.rules = rules.stream()
+                .filter(rule -> !rule.isBlank())
+                .map(UriRule::parse)
+                .toArray(UriRule[]::new);
+        log.info("Запись хитов по правилам: {}", rules);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return rules.length == 0 || !"GET".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        chain.doFilter(request, response);
+
+        if (response.getStatus() >= 400) {
+            return;
+        }
+        String uri = request.getRequestURI();
+        for (UriRule rule : rules) {
+            if (rule.matches(uri)) {
+                if (rule.rate() >= 1 || ThreadLocalRandom.current().nextDouble() < rule.rate()) {
+                    statClient.hit(request);
+                }
+                return;
+            }
+        }
+    }
+
+    // Сопоставление идёт по символам строки uri, без разбиения на сегменты и без выделения памяти
+    record UriRule(String pattern, double rate) {
+
+        static UriRule parse(String rule) {
+            int separator = rule.lastIndexOf('=');
+            if (separator < 0) {
+                return new UriRule(rule.strip(), 1);
+            }
+            double rate = Double.parseDouble(rule.substring(separator + 1).strip());
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Sampling rate must be between 0 and 1: " + rule);
+            }
+            return new UriRule(rule.substring(0, separator).strip(), rate);
+        }
+
+        boolean matches(String uri) {
+            int p = 0;
+            int u = 0;
+            while (p < pattern.length()) {
+                if (pattern.startsWith("/**", p) && p + 3 == pattern.length()) {
+                    return u == uri.length() || uri.charAt(u) == '/';
+                }
+                char c = pattern.charAt(p);
+                if (c == '*') {
+                    int segmentEnd = uri.indexOf('/', u);
+                    if (segmentEnd < 0) {
+                        segmentEnd = uri.length();
+                    }
+                    if (segmentEnd == u) {
+                        return false;
+                    }
+                    u = segmentEnd;
+                    p++;
+                } else if (u < uri.length() && uri.charAt(u) == c) {
+                    u++;
+                    p++;
+                } else {
+                    return false;
+                }
+            }
+            return u == uri.length();
+        }
+    }
+}
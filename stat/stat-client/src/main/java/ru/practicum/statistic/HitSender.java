@@ -0,0 +1,243 @@
+package ru.practicum.statistic;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Фоновая отправка хитов пачками в POST /hits/batch.
+// Поток запроса только кладёт хит в ограниченную очередь, поэтому задержка и доступность
+// сервиса статистики не влияют на время ответа. При переполнении хит отбрасывается
+// или поток ждёт не дольше block-timeout — в зависимости от overflow-policy.
+// Пачки, которые не удалось отправить, дописываются в HitSpool.
+// flush ждёт отправки уже принятых хитов: так чтение просмотров после хита видит этот хит.
+@Slf4j
+@Component
+public class HitSender {
+
+    // Отметка в очереди от flush: собранная пачка отправляется сразу, не дожидаясь linger
+    private static final EndpointHitDto FLUSH = new EndpointHitDto();
+
+    private final StatTransport transport;
+    // Optional, а не ObjectProvider: так журнал закрывается после HitSender и принимает хиты, оставшиеся в очереди
+    private final HitSpool hitSpool;
+    private final BlockingQueue<EndpointHitDto> queue;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final boolean virtualThreads;
+    private final long flushTimeoutNanos;
+
+    // Принятые в очередь и ещё не обработанные хиты; обработанные — отправленные, записанные в журнал
+    // или потерянные. Отправитель сначала увеличивает processed, потом уменьшает unsent
+    private final AtomicLong unsent = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final ReentrantLock processedLock = new ReentrantLock();
+    private final Condition processedAdvanced = processedLock.newCondition();
+
+    private final Counter dropped;
+    private final Counter failed;
+    private final DistributionSummary batchSizes;
+    private final Timer sendLatency;
+
+    private volatile boolean running;
+    private Thread sender;
+
+    public HitSender(StatTransport transport,
+                     @Value("${stat.client.hits.queue-capacity:10000}") int queueCapacity,
+                     @Value("${stat.client.hits.batch-size:500}") int batchSize,
+                     @Value("${stat.client.hits.linger:200ms}") Duration linger,
+                     @Value("${stat.client.hits.overflow-policy:DROP}") OverflowPolicy overflowPolicy,
+                     @Value("${stat.client.hits.block-timeout:50ms}") Duration blockTimeout,
+                     @Value("${stat.client.hits.flush-timeout:500ms}") Duration flushTimeout,
+                     @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                     Optional<HitSpool> hitSpool,
+                     ObjectProvider<MeterRegistry> meterRegistry) {
+        this.transport = transport;
+        this.hitSpool = hitSpool.orElse(null);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.virtualThreads = virtualThreads;
+        this.flushTimeoutNanos = flushTimeout.toNanos();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        Gauge.builder("stat.client.hits.queue.size", queue, BlockingQueue::size).register(registry);
+        this.dropped = Counter.builder("stat.client.hits.dropped").register(registry);
+        this.failed = Counter.builder("stat.client.hits.failed").register(registry);
+        this.batchSizes = DistributionSummary.builder("stat.client.hits.batch.size").register(registry);
+        this.sendLatency = Timer.builder("stat.client.hits.send").register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+        sender = builder.name("stat-hit-sender").start(this::run);
+    }
+
+    // Оставшиеся в очереди хиты отправляются до остановки контекста; отметка flush будит отправителя,
+    // ждущего linger
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        queue.offer(FLUSH);
+        sender.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public void offer(EndpointHitDto hit) {
+        unsent.incrementAndGet();
+        boolean accepted;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                accepted = queue.offer(hit, blockTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+        } else {
+            accepted = queue.offer(hit);
+        }
+        if (!accepted) {
+            unsent.decrementAndGet();
+            dropped.increment();
+        }
+    }
+
+    // Ждёт, пока хиты, принятые до вызова, будут обработаны, но не дольше flush-timeout.
+    // unsent читается раньше processed, поэтому цель ожидания может оказаться выше нужной, но не ниже
+    public void flush() {
+        long pending = unsent.get();
+        if (pending == 0) {
+            return;
+        }
+        long target = processed.get() + pending;
+        if (flushQueued.compareAndSet(false, true) && !queue.offer(FLUSH)) {
+            flushQueued.set(false);
+        }
+        long remaining = flushTimeoutNanos;
+        processedLock.lock();
+        try {
+            while (processed.get() < target && remaining > 0) {
+                remaining = processedAdvanced.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            processedLock.unlock();
+        }
+    }
+
+    private void run() {
+        List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+                advance(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    // Ждёт первый хит, затем добирает пачку до batch-size, но не дольше linger и не дальше отметки flush
+    private void collect(List<EndpointHitDto> batch) throws InterruptedException {
+        EndpointHitDto first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null || takeFlush(first)) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            int drainedFrom = batch.size();
+            queue.drainTo(batch, batchSize - batch.size());
+            boolean flushed = batch.subList(drainedFrom, batch.size()).removeIf(this::takeFlush);
+            long remaining = deadline - System.nanoTime();
+            if (flushed || batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            EndpointHitDto next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null || takeFlush(next)) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private boolean takeFlush(EndpointHitDto hit) {
+        if (hit != FLUSH) {
+            return false;
+        }
+        flushQueued.set(false);
+        return true;
+    }
+
+    private void advance(int count) {
+        processed.addAndGet(count);
+        unsent.addAndGet(-count);
+        processedLock.lock();
+        try {
+            processedAdvanced.signalAll();
+        } finally {
+            processedLock.unlock();
+        }
+    }
+
+    private void send(List<EndpointHitDto> batch) {
+        batchSizes.record(batch.size());
+        long startedAt = System.nanoTime();
+        try {
+            transport.postHits(batch);
+        } catch (StatUnavailableException e) {
+            log.debug("Хиты не отправлены: {}", e.getMessage());
+            spool(batch);
+        } catch (Exception e) {
+            log.warn("Не удалось отправить {} хитов в сервис статистики", batch.size(), e);
+            spool(batch);
+        } finally {
+            sendLatency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Неотправленная пачка уходит в журнал на диске и будет дослана HitSpool
+    private void spool(List<EndpointHitDto> batch) {
+        if (hitSpool != null) {
+            hitSpool.append(batch);
+        } else {
+            failed.increment(batch.size());
+        }
+    }
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+}
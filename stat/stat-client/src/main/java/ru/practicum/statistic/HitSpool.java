@@ -0,0 +1,410 @@
+package ru.practicum.statistic;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Журнал хитов, которые не удалось отправить, в отображённых в память сегментах на диске.
+// Запись: длина, CRC32 и сами поля хита; длина пишется последней, а за записью остаётся нулевой заголовок,
+// поэтому после падения журнал читается до первой неполной или испорченной записи.
+// Прочитанная позиция хранится в файле checkpoint и сдвигается только после успешной отправки пачки:
+// после падения пачка может уйти повторно, но не потеряется.
+// Если журнал занимает max-size, новые хиты отбрасываются.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stat.client.spool.enabled", havingValue = "true", matchIfMissing = true)
+public class HitSpool {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d{20})\\.seg");
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+
+    private final StatTransport transport;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Duration replayInterval;
+    private final int replayBatchSize;
+    private final boolean virtualThreads;
+
+    // Не монитор: под блокировкой идёт запись на диск (force), а монитор закрепил бы виртуальный поток за носителем
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private long readSegment;
+    private int readOffset;
+
+    private final Counter appended;
+    private final Counter replayed;
+    private final Counter rejected;
+
+    private ScheduledExecutorService replayer;
+
+    public HitSpool(StatTransport transport,
+                    @Value("${stat.client.spool.dir:${java.io.tmpdir}/stat-client-spool}") Path directory,
+                    @Value("${stat.client.spool.segment-size:16MB}") DataSize segmentSize,
+                    @Value("${stat.client.spool.max-size:256MB}") DataSize maxSize,
+                    @Value("${stat.client.spool.replay-interval:5s}") Duration replayInterval,
+                    @Value("${stat.client.spool.replay-batch-size:500}") int replayBatchSize,
+                    @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                    ObjectProvider<MeterRegistry> meterRegistry) throws IOException {
+        this.transport = transport;
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(segmentSize.toBytes(), Integer.MAX_VALUE);
+        this.maxSegments = (int) Math.max(maxSize.toBytes() / this.segmentSize, 1);
+        this.replayInterval = replayInterval;
+        this.replayBatchSize = replayBatchSize;
+        this.virtualThreads = virtualThreads;
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.appended = Counter.builder("stat.client.spool.appended").register(registry);
+        this.replayed = Counter.builder("stat.client.spool.replayed").register(registry);
+        this.rejected = Counter.builder("stat.client.spool.rejected").register(registry);
+        Gauge.builder("stat.client.spool.pending", this, HitSpool::pendingBytes).baseUnit("bytes")
+                .register(registry);
+
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+        replayer = Executors.newSingleThreadScheduledExecutor(builder.name("stat-hit-spool").factory());
+        replayer.scheduleWithFixedDelay(this::replay, replayInterval.toMillis(), replayInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        lock.lock();
+        try {
+            replayer.shutdownNow();
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Дописывает пачку в журнал и сбрасывает её на диск; хиты сверх max-size отбрасываются
+    public void append(List<EndpointHitDto> hits) {
+        lock.lock();
+        try {
+            Segment touched = null;
+            for (EndpointHitDto hit : hits) {
+                byte[] payload = encode(hit);
+                Segment segment = payload == null ? null : segmentFor(HEADER_BYTES + payload.length);
+                if (segment == null) {
+                    rejected.increment();
+                    continue;
+                }
+                if (touched != null && touched != segment) {
+                    touched.buffer.force();
+                }
+                write(segment, payload);
+                touched = segment;
+                appended.increment();
+            }
+            if (touched != null) {
+                touched.buffer.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Отправляет журнал пачками, пока он не опустеет или сервис статистики не откажет
+    void replay() {
+        try {
+            while (true) {
+                Batch batch = readBatch();
+                if (batch.hits().isEmpty()) {
+                    return;
+                }
+                try {
+                    transport.postHits(batch.hits());
+                    replayed.increment(batch.hits().size());
+                } catch (RestClientResponseException e) {
+                    if (!e.getStatusCode().is4xxClientError()) {
+                        throw e;
+                    }
+                    // Пачку, которую сервис статистики не принимает, повторять бессмысленно: она бы заблокировала журнал
+                    log.warn("Сервис статистики отклонил {} хитов из журнала: {}", batch.hits().size(),
+                            e.getStatusCode());
+                    rejected.increment(batch.hits().size());
+                } catch (IllegalArgumentException e) {
+                    // Хит, который не кодируется в формат hits-format, не отправится и при повторе
+                    log.warn("Не удалось закодировать {} хитов из журнала: {}", batch.hits().size(), e.getMessage());
+                    rejected.increment(batch.hits().size());
+                }
+                commit(batch);
+            }
+        } catch (StatUnavailableException e) {
+            log.debug("Журнал хитов не отправлен: {}", e.getMessage());
+        } catch (Exception e) {
+            log.warn("Не удалось отправить журнал хитов в сервис статистики", e);
+        }
+    }
+
+    private Batch readBatch() {
+        lock.lock();
+        try {
+            List<EndpointHitDto> hits = new ArrayList<>();
+            long segmentId = readSegment;
+            int offset = readOffset;
+            while (hits.size() < replayBatchSize) {
+                Segment segment = segments.get(segmentId);
+                if (segment == null || offset >= segment.writePosition) {
+                    Long next = segments.higherKey(segmentId);
+                    if (next == null) {
+                        break;
+                    }
+                    segmentId = next;
+                    offset = 0;
+                    continue;
+                }
+                ByteBuffer buffer = segment.buffer;
+                int length = buffer.getInt(offset);
+                byte[] payload = new byte[length];
+                buffer.get(offset + HEADER_BYTES, payload);
+                hits.add(decode(payload));
+                offset += HEADER_BYTES + length;
+            }
+            return new Batch(hits, segmentId, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void commit(Batch batch) throws IOException {
+        lock.lock();
+        try {
+            readSegment = batch.segment();
+            readOffset = batch.offset();
+            writeCheckpoint();
+            // Прочитанные сегменты, кроме последнего, в который ещё пишут, удаляются
+            while (!segments.isEmpty() && segments.firstKey() < readSegment) {
+                delete(segments.pollFirstEntry().getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment segmentFor(int size) {
+        if (size + HEADER_BYTES > segmentSize) {
+            return null;
+        }
+        Segment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (last != null && last.writePosition + size + HEADER_BYTES <= segmentSize) {
+            return last;
+        }
+        if (segments.size() >= maxSegments) {
+            return null;
+        }
+        try {
+            if (last != null) {
+                last.buffer.force();
+            }
+            long id = last == null ? 1 : last.id + 1;
+            Segment segment = open(id);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            log.warn("Не удалось создать сегмент журнала хитов в {}", directory, e);
+            return null;
+        }
+    }
+
+    private void write(Segment segment, byte[] payload) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.put(position + HEADER_BYTES, payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        int end = position + HEADER_BYTES + payload.length;
+        buffer.putInt(end, 0);
+        buffer.putInt(position, payload.length);
+        segment.writePosition = end;
+    }
+
+    // Восстанавливает конец каждого сегмента по последней целой записи и позицию чтения по checkpoint
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    long id = Long.parseLong(matcher.group(1));
+                    Segment segment = open(id);
+                    segment.writePosition = scan(segment.buffer);
+                    segments.put(id, segment);
+                }
+            }
+        }
+
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            if (saved.remaining() == Long.BYTES + Integer.BYTES) {
+                readSegment = saved.getLong();
+                readOffset = saved.getInt();
+            }
+        }
+        Segment current = segments.get(readSegment);
+        if (current == null) {
+            Long next = segments.ceilingKey(readSegment);
+            readSegment = next == null ? 0 : next;
+            readOffset = 0;
+        } else {
+            readOffset = Math.min(readOffset, current.writePosition);
+        }
+        while (!segments.isEmpty() && segments.firstKey() < readSegment) {
+            delete(segments.pollFirstEntry().getValue());
+        }
+
+        if (pendingBytes() > 0) {
+            log.info("Журнал хитов: {} сегм., {} байт к отправке", segments.size(), pendingBytes());
+        }
+    }
+
+    private int scan(MappedByteBuffer buffer) {
+        int position = 0;
+        while (position + HEADER_BYTES <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private Segment open(long id) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(String.format("%020d.seg", id)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(id, channel, buffer);
+    }
+
+    private void delete(Segment segment) throws IOException {
+        segment.channel.close();
+        Files.deleteIfExists(directory.resolve(String.format("%020d.seg", segment.id)));
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        Files.write(temporary, ByteBuffer.allocate(Long.BYTES + Integer.BYTES)
+                .putLong(readSegment)
+                .putInt(readOffset)
+                .array());
+        Files.move(temporary, directory.resolve(CHECKPOINT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long pendingBytes() {
+        lock.lock();
+        try {
+            long pending = 0;
+            for (Map.Entry<Long, Segment> entry : segments.tailMap(readSegment, true).entrySet()) {
+                pending += entry.getValue().writePosition;
+            }
+            return Math.max(pending - readOffset, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] encode(EndpointHitDto hit) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(Objects.toString(hit.getApp(), ""));
+            out.writeUTF(Objects.toString(hit.getUri(), ""));
+            out.writeUTF(Objects.toString(hit.getIp(), ""));
+            out.writeUTF(Objects.toString(hit.getTimestamp(), ""));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // writeUTF не принимает строки длиннее 64 КБ — такой хит в журнал не попадает
+            return null;
+        }
+    }
+
+    private static EndpointHitDto decode(byte[] payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            return EndpointHitDto.builder()
+                    .app(in.readUTF())
+                    .uri(in.readUTF())
+                    .ip(in.readUTF())
+                    .timestamp(in.readUTF())
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        private Segment(long id, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Batch(List<EndpointHitDto> hits, long segment, int offset) {
+    }
+}
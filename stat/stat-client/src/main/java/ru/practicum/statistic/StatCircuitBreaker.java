@@ -0,0 +1,133 @@
+package ru.practicum.statistic;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Circuit breaker по доле ошибок среди последних window-size вызовов.
+// При превышении порога вызовы отклоняются open-duration, затем пропускается один пробный:
+// успех замыкает цепь, ошибка снова размыкает.
+@Slf4j
+class StatCircuitBreaker {
+
+    enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final boolean[] outcomes;
+    private final int failureRateThreshold;
+    private final long openNanos;
+
+    private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+
+    private State state = State.CLOSED;
+    private int recorded;
+    private int next;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    StatCircuitBreaker(int windowSize, int failureRateThreshold, Duration openDuration, MeterRegistry registry) {
+        this.outcomes = new boolean[windowSize];
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+
+        for (State target : State.values()) {
+            transitions.put(target, Counter.builder("stat.client.circuit.transitions")
+                    .tag("state", target.name().toLowerCase())
+                    .register(registry));
+        }
+        Gauge.builder("stat.client.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("0 - closed, 1 - half-open, 2 - open")
+                .register(registry);
+    }
+
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            transition(State.CLOSED);
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (recorded == outcomes.length && failures * 100 >= failureRateThreshold * recorded) {
+            open();
+        }
+    }
+
+    // Вызов завершился без исхода: в HALF_OPEN следующий вызов снова может стать пробным
+    synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probing = false;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        reset();
+        openedAt = System.nanoTime();
+        transition(State.OPEN);
+    }
+
+    private void reset() {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        probing = false;
+    }
+
+    private void transition(State target) {
+        log.info("Circuit breaker сервиса статистики: {} -> {}", state, target);
+        state = target;
+        transitions.get(target).increment();
+    }
+}
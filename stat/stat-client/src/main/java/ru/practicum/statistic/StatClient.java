@@ -1,19 +1,38 @@
 package ru.practicum.statistic;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestClient;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
@@ -21,19 +40,75 @@ public class StatClient {
 
     private static final DateTimeFormatter FORMATTER =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // Начало отсчёта «за всё время»: более ранних хитов в сервисе статистики нет
+    private static final LocalDateTime ALL_TIME = LocalDateTime.of(2000, 1, 1, 0, 0);
 
-    private final RestClient restClient;
+    private final StatTransport transport;
     private final String appName;
+    private final HitSender hitSender;
+    private final ViewsCache viewsCache;
+    private final ObjectProvider<ViewStream> viewStream;
+    private final int chunkSize;
+    private final long deadlineNanos;
+    private final ExecutorService chunkExecutor;
 
-    public StatClient(@Value("${stat.server.url}") String serverUrl,
-                      @Value("${spring.application.name}") String appName) {
-        log.info("StatClient baseUrl = {}", serverUrl);
-        this.restClient = RestClient.builder()
-                .baseUrl(serverUrl)
-                .build();
+    private final Counter capturedHits;
+    private final DistributionSummary queryUris;
+    private final DistributionSummary queryRows;
+    private final Timer completeFetches;
+    private final Timer partialFetches;
+    private final Timer failedFetches;
+
+    public StatClient(StatTransport transport,
+                      @Value("${spring.application.name}") String appName,
+                      HitSender hitSender,
+                      ViewsCache viewsCache,
+                      ObjectProvider<ViewStream> viewStream,
+                      @Value("${stat.client.stats.chunk-size:200}") int chunkSize,
+                      @Value("${stat.client.stats.deadline:3s}") Duration deadline,
+                      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                      ObjectProvider<MeterRegistry> meterRegistry) {
+        this.transport = transport;
         this.appName = appName;
+        this.hitSender = hitSender;
+        this.viewsCache = viewsCache;
+        this.viewStream = viewStream;
+        this.chunkSize = chunkSize;
+        this.chunkExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stat-chunk-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("stat-chunk-", 0).factory());
+        this.deadlineNanos = deadline.toNanos();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.capturedHits = Counter.builder("stat.client.hits.captured").register(registry);
+        this.queryUris = DistributionSummary.builder("stat.client.stats.query.uris")
+                .tag("operation", "stats")
+                .register(registry);
+        this.queryRows = DistributionSummary.builder("stat.client.stats.response.rows")
+                .tag("operation", "stats")
+                .register(registry);
+        this.completeFetches = fetchTimer("complete", registry);
+        this.partialFetches = fetchTimer("partial", registry);
+        this.failedFetches = fetchTimer("failed", registry);
+    }
+
+    // stat.client.stats.fetch — время запроса статистики целиком, со всеми частями, по исходу:
+    // complete, partial (часть не успела к deadline или упала) и failed
+    private static Timer fetchTimer(String result, MeterRegistry registry) {
+        return Timer.builder("stat.client.stats.fetch")
+                .tag("operation", "stats")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        chunkExecutor.shutdownNow();
     }
 
+    // Данные запроса снимаются сразу, отправка идёт в фоне пачками через HitSender.
+    // Закэшированные просмотры uri устаревают, чтобы следующее чтение увидело этот хит
     public void hit(HttpServletRequest request) {
         EndpointHitDto dto = EndpointHitDto.builder()
                 .app(appName)
@@ -42,82 +117,227 @@ public class StatClient {
                 .timestamp(LocalDateTime.now().format(FORMATTER))
                 .build();
 
-        try {
-            restClient.post()
-                    .uri("/hit")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(dto)
-                    .retrieve()
-                    .onStatus(HttpStatusCode::is5xxServerError, (req, res) -> {
-                        throw new ResponseStatusException(
-                                res.getStatusCode(),
-                                res.getBody().toString()
-                        );
-                    })
-                    .onStatus(HttpStatusCode::is4xxClientError, (req, res) -> {
-                        throw new ResponseStatusException(
-                                res.getStatusCode(),
-                                res.getBody().toString()
-                        );
-                    })
-                    .toBodilessEntity();
-        } catch (Exception e) {
-            log.warn("Не удалось отправить hit в сервис статистики", e);
-        }
+        capturedHits.increment();
+        hitSender.offer(dto);
+        viewsCache.invalidate(dto.getUri());
     }
 
+    // uri передаются в теле POST /stats/query; списки длиннее chunk-size запрашиваются частями параллельно
     public List<ViewStatsDto> getStatistics(LocalDateTime start,
                                             LocalDateTime end,
                                             List<String> uris,
                                             Boolean unique) {
+        return queryStatistics(StatsQueryDto.builder()
+                .start(start.format(FORMATTER))
+                .end(end.format(FORMATTER))
+                .uris(uris)
+                .unique(Boolean.TRUE.equals(unique))
+                .build());
+    }
 
-        String startStr = start.format(FORMATTER);
-        String endStr = end.format(FORMATTER);
+    // Статистика по шаблонам uri, например /events/* для всех событий
+    public List<ViewStatsDto> getStatisticsByPatterns(LocalDateTime start,
+                                                      LocalDateTime end,
+                                                      List<String> uriPatterns,
+                                                      Boolean unique) {
+        return queryStatistics(StatsQueryDto.builder()
+                .start(start.format(FORMATTER))
+                .end(end.format(FORMATTER))
+                .uriPatterns(uriPatterns)
+                .unique(Boolean.TRUE.equals(unique))
+                .build());
+    }
 
+    // Просмотры каждого uri с момента since.get(uri) по сейчас через ViewsCache; null — за всё время.
+    // Начало отсчёта входит в ключ кэша. Значение может отставать не больше чем на stat.client.views.ttl,
+    // а хиты, записанные этим клиентом, видны уже при следующем чтении; при недоступном сервисе статистики отдаётся последнее известное значение или 0.
+    // uri из частей, не успевших к сроку, в ответе загрузчика отсутствуют и в кэш не попадают.
+    // Поток stat.client.view-stream несёт только итоги за всё время, поэтому из памяти без запросов
+    // отвечает лишь запрос, где у всех uri since == null; uri, которых нет в потоке, читаются через кэш
+    public Map<String, Long> getViews(Map<String, LocalDateTime> since, boolean unique) {
+        ViewStream stream = viewStream.getIfAvailable();
+        if (stream == null || !stream.isLive() || !since.values().stream().allMatch(Objects::isNull)) {
+            return viewsCache.get(since, unique, missing -> loadViews(missing, unique));
+        }
+        Map<String, Long> views = stream.views(List.copyOf(since.keySet()), unique);
+        if (views.size() < since.size()) {
+            Map<String, LocalDateTime> rest = new HashMap<>(since);
+            rest.keySet().removeAll(views.keySet());
+            views.putAll(viewsCache.get(rest, unique, missing -> loadViews(missing, unique)));
+        }
+        return views;
+    }
+
+    // Загрузка для ViewsCache: сначала дожидается отправки хитов из очереди HitSender
+    private Map<String, Long> loadViews(Map<String, LocalDateTime> since, boolean unique) {
+        hitSender.flush();
+        return getViewsSince(since, unique);
+    }
+
+    // Просмотры без ViewsCache: uri с одинаковым началом отсчёта запрашиваются одним запросом, разные —
+    // параллельно. В ответе только uri из частей, успевших к deadline; если не успела ни одна — ошибка
+    public Map<String, Long> getViewsSince(Map<String, LocalDateTime> since, boolean unique) {
+        Map<LocalDateTime, List<String>> byStart = new HashMap<>();
+        since.forEach((uri, start) -> byStart.computeIfAbsent(start != null ? start : ALL_TIME,
+                key -> new ArrayList<>()).add(uri));
+        String end = LocalDateTime.now().format(FORMATTER);
+        List<StatsQueryDto> queries = byStart.entrySet().stream()
+                .map(group -> StatsQueryDto.builder()
+                        .start(group.getKey().format(FORMATTER))
+                        .end(end)
+                        .uris(group.getValue())
+                        .unique(unique)
+                        .build())
+                .toList();
+
+        Map<String, Long> views = new HashMap<>();
+        for (Chunk chunk : fetchChunks(queries)) {
+            chunk.uris().forEach(uri -> views.put(uri, 0L));
+            chunk.stats().forEach(stats -> views.merge(stats.getUri(),
+                    stats.getHits() != null ? stats.getHits() : 0L, Long::sum));
+        }
+        return views;
+    }
+
+    // Хиты за всё время всех uri под шаблоном одним запросом, без ViewsCache: по их изменению фоновые выгрузки
+    // находят uri с новыми хитами. При недоступном сервисе статистики — пустой список
+    public List<ViewStatsDto> getHitsByPattern(String uriPattern) {
+        return getStatisticsByPatterns(ALL_TIME, LocalDateTime.now(), List.of(uriPattern), false);
+    }
+
+    private List<ViewStatsDto> queryStatistics(StatsQueryDto query) {
         try {
-            return restClient.get()
-                    .uri(uriBuilder -> {
-                        var builder = uriBuilder
-                                .path("/stats")
-                                .queryParam("start", startStr)
-                                .queryParam("end", endStr)
-                                .queryParam("unique", unique);
-
-                        if (uris != null && !uris.isEmpty()) {
-                            for (String uri : uris) {
-                                builder.queryParam("uris", uri);
-                            }
-                        }
-
-                        var uri = builder.build();
-                        log.info("Request stats URI: {}", uri.toString());
-                        return uri;
-                    })
-                    .retrieve()
-                    .onStatus(HttpStatusCode::is5xxServerError, (req, res) -> {
-                        throw new ResponseStatusException(
-                                res.getStatusCode(),
-                                res.getBody().toString()
-                        );
-                    })
-                    .onStatus(HttpStatusCode::is4xxClientError, (req, res) -> {
-                        throw new ResponseStatusException(
-                                res.getStatusCode(),
-                                res.getBody().toString()
-                        );
-                    })
-                    .body(new ParameterizedTypeReference<>() {});
+            List<Chunk> chunks = fetchChunks(List.of(query));
+            if (chunks.size() == 1) {
+                return chunks.get(0).stats();
+            }
+            // Каждая часть ограничена limit сама по себе, поэтому общий список обрезается ещё раз
+            return chunks.stream()
+                    .flatMap(chunk -> chunk.stats().stream())
+                    .sorted(Comparator.comparingLong(
+                            (ViewStatsDto stats) -> stats.getHits() != null ? stats.getHits() : 0L).reversed())
+                    .limit(query.getLimit() != null ? query.getLimit() : Long.MAX_VALUE)
+                    .toList();
         } catch (Exception e) {
             log.warn("Не удалось получить статистику из сервиса статистики", e);
             return Collections.emptyList();
         }
     }
 
+    private List<Chunk> fetchChunks(List<StatsQueryDto> queries) {
+        long started = System.nanoTime();
+        Timer result = failedFetches;
+        try {
+            List<Chunk> chunks = fetchAll(queries);
+            int expected = queries.stream().mapToInt(this::chunkCount).sum();
+            result = chunks.size() < expected ? partialFetches : completeFetches;
+            return chunks;
+        } finally {
+            result.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private int chunkCount(StatsQueryDto query) {
+        List<String> uris = query.getUris();
+        return uris == null || uris.size() <= chunkSize ? 1 : (uris.size() + chunkSize - 1) / chunkSize;
+    }
+
+    // Длинный список uri делится на части по chunk-size; части всех запросов идут на виртуальных потоках.
+    // Возвращаются части, успевшие к deadline; если не успела ни одна, выбрасывается ошибка первой из них
+    private List<Chunk> fetchAll(List<StatsQueryDto> queries) {
+        if (queries.size() == 1 && chunkCount(queries.get(0)) == 1) {
+            StatsQueryDto query = queries.get(0);
+            List<String> uris = query.getUris();
+            return List.of(new Chunk(uris == null ? List.of() : uris, requestStatistics(query)));
+        }
+
+        List<Callable<Chunk>> tasks = new ArrayList<>();
+        for (StatsQueryDto query : queries) {
+            List<String> uris = query.getUris() == null ? List.of() : query.getUris();
+            for (int from = 0; from == 0 || from < uris.size(); from += chunkSize) {
+                List<String> part = uris.subList(from, Math.min(from + chunkSize, uris.size()));
+                StatsQueryDto partQuery = StatsQueryDto.builder()
+                        .start(query.getStart())
+                        .end(query.getEnd())
+                        .uris(part)
+                        .uriPatterns(query.getUriPatterns())
+                        .unique(query.isUnique())
+                        .limit(query.getLimit())
+                        .build();
+                tasks.add(() -> new Chunk(part, requestStatistics(partQuery)));
+            }
+        }
+
+        List<Future<Chunk>> futures;
+        try {
+            futures = chunkExecutor.invokeAll(tasks, deadlineNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StatUnavailableException("Interrupted while waiting for stats");
+        }
+
+        List<Chunk> chunks = new ArrayList<>();
+        List<RuntimeException> failures = new ArrayList<>();
+        for (Future<Chunk> future : futures) {
+            try {
+                chunks.add(future.get());
+            } catch (CancellationException e) {
+                failures.add(new StatUnavailableException("Stats chunk missed the deadline"));
+            } catch (ExecutionException e) {
+                failures.add(e.getCause() instanceof RuntimeException cause
+                        ? cause
+                        : new IllegalStateException(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.add(new StatUnavailableException("Interrupted while waiting for stats"));
+            }
+        }
+        if (chunks.isEmpty()) {
+            throw failures.get(0);
+        }
+        if (!failures.isEmpty()) {
+            log.warn("Статистика получена частично: {} из {} частей, {}", chunks.size(), futures.size(),
+                    failures.get(0).getMessage());
+        }
+        return chunks;
+    }
+
+    private List<ViewStatsDto> requestStatistics(StatsQueryDto query) {
+        queryUris.record(query.getUris() == null ? 0 : query.getUris().size());
+        List<ViewStatsDto> stats = transport.call(StatTransport.Operation.STATS, restClient -> restClient.post()
+                .uri("/stats/query")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(query)
+                .retrieve()
+                .onStatus(HttpStatusCode::is5xxServerError, (req, res) -> {
+                    throw new ResponseStatusException(
+                            res.getStatusCode(),
+                            res.getBody().toString()
+                    );
+                })
+                .onStatus(HttpStatusCode::is4xxClientError, (req, res) -> {
+                    throw new ResponseStatusException(
+                            res.getStatusCode(),
+                            res.getBody().toString()
+                    );
+                })
+                .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {}));
+        queryRows.record(stats == null ? 0 : stats.size());
+        return stats;
+    }
+
+    private record Chunk(List<String> uris, List<ViewStatsDto> stats) {
+    }
 
+    // Первый адрес X-Forwarded-For без split: массив и строки для остальных адресов не создаются
     private String extractClientIp(HttpServletRequest request) {
         String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isBlank()) {
-            return xForwardedFor.split(",")[0].trim();
+        if (xForwardedFor != null) {
+            int comma = xForwardedFor.indexOf(',');
+            String first = (comma < 0 ? xForwardedFor : xForwardedFor.substring(0, comma)).strip();
+            if (!first.isEmpty()) {
+                return first;
+            }
         }
         return request.getRemoteAddr();
     }
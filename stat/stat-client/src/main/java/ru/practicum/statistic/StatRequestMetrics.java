@@ -0,0 +1,60 @@
+package ru.practicum.statistic;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Метрики HTTP-вызовов одной операции StatTransport: stat.client.requests — время до ответа с гистограммой,
+// с тегами operation и status (код ответа или IO_ERROR, если ответа нет), stat.client.requests.size — размер тела
+// запроса в байтах. Вызовы, отклонённые circuit breaker или bulkhead, сюда не доходят: их считает
+// stat.client.calls.rejected
+class StatRequestMetrics implements ClientHttpRequestInterceptor {
+
+    private static final String IO_ERROR = "IO_ERROR";
+
+    private final MeterRegistry registry;
+    private final String operation;
+    private final DistributionSummary requestSizes;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    StatRequestMetrics(StatTransport.Operation operation, MeterRegistry registry) {
+        this.registry = registry;
+        this.operation = operation.name().toLowerCase();
+        this.requestSizes = DistributionSummary.builder("stat.client.requests.size")
+                .baseUnit("bytes")
+                .tag("operation", this.operation)
+                .register(registry);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        requestSizes.record(body.length);
+        long started = System.nanoTime();
+        String status = IO_ERROR;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            status = Integer.toString(response.getStatusCode().value());
+            return response;
+        } finally {
+            timer(status).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(String status) {
+        return timers.computeIfAbsent(status, key -> Timer.builder("stat.client.requests")
+                .tag("operation", operation)
+                .tag("status", key)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
@@ -0,0 +1,195 @@
+package ru.practicum.statistic;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// HTTP-транспорт к сервису статистики: общий пул соединений, таймауты по операциям,
+// circuit breaker и bulkhead. Bulkhead ограничивает одновременные вызовы из потоков запросов,
+// чтобы зависший сервис статистики не занял все потоки Tomcat.
+@Slf4j
+@Component
+public class StatTransport {
+
+    public enum HitsFormat {
+        JSON,
+        // HitBatchCodec: компактнее и дешевле в кодировании, нужен stat-server с его поддержкой
+        BINARY
+    }
+
+    public enum Operation {
+        // Чтение статистики из потоков запросов: проходит через bulkhead
+        STATS,
+        // Фоновая отправка хитов: потоков запросов не занимает
+        HITS
+    }
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final Map<Operation, CloseableHttpClient> httpClients = new EnumMap<>(Operation.class);
+    private final Map<Operation, RestClient> restClients = new EnumMap<>(Operation.class);
+    private final StatCircuitBreaker circuitBreaker;
+    private final Semaphore bulkhead;
+    private final long bulkheadWaitNanos;
+    private final HitsFormat hitsFormat;
+
+    private final Counter rejectedByCircuit;
+    private final Counter rejectedByBulkhead;
+
+    public StatTransport(@Value("${stat.server.url}") String serverUrl,
+                         @Value("${stat.client.transport.max-connections:50}") int maxConnections,
+                         @Value("${stat.client.transport.connect-timeout:1s}") Duration connectTimeout,
+                         @Value("${stat.client.transport.pool-timeout:200ms}") Duration poolTimeout,
+                         @Value("${stat.client.transport.stats-timeout:2s}") Duration statsTimeout,
+                         @Value("${stat.client.transport.hits-timeout:5s}") Duration hitsTimeout,
+                         @Value("${stat.client.transport.hits-format:JSON}") HitsFormat hitsFormat,
+                         @Value("${stat.client.circuit-breaker.window-size:20}") int windowSize,
+                         @Value("${stat.client.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                         @Value("${stat.client.circuit-breaker.open-duration:10s}") Duration openDuration,
+                         @Value("${stat.client.bulkhead.max-concurrent-calls:20}") int maxConcurrentCalls,
+                         @Value("${stat.client.bulkhead.max-wait:0ms}") Duration bulkheadWait,
+                         ObjectProvider<MeterRegistry> meterRegistry) {
+        log.info("StatClient baseUrl = {}", serverUrl);
+        this.hitsFormat = hitsFormat;
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .build())
+                .build();
+        httpClients.put(Operation.STATS, httpClient(poolTimeout, statsTimeout));
+        httpClients.put(Operation.HITS, httpClient(poolTimeout, hitsTimeout));
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        httpClients.forEach((operation, httpClient) -> restClients.put(operation, RestClient.builder()
+                .baseUrl(serverUrl)
+                .requestFactory(new HttpComponentsClientHttpRequestFactory(httpClient))
+                .requestInterceptor(new StatRequestMetrics(operation, registry))
+                .build()));
+
+        this.circuitBreaker = new StatCircuitBreaker(windowSize, failureRateThreshold, openDuration, registry);
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.bulkheadWaitNanos = bulkheadWait.toNanos();
+        this.rejectedByCircuit = Counter.builder("stat.client.calls.rejected").tag("cause", "circuit")
+                .register(registry);
+        this.rejectedByBulkhead = Counter.builder("stat.client.calls.rejected").tag("cause", "bulkhead")
+                .register(registry);
+        Gauge.builder("stat.client.bulkhead.available", bulkhead, Semaphore::availablePermits).register(registry);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (CloseableHttpClient httpClient : httpClients.values()) {
+            httpClient.close();
+        }
+        connectionManager.close();
+    }
+
+    // Выполняет запрос через RestClient операции; StatUnavailableException, если вызов отклонён
+    public <T> T call(Operation operation, Function<RestClient, T> request) {
+        boolean bulkheaded = operation == Operation.STATS;
+        if (bulkheaded && !acquireBulkhead()) {
+            rejectedByBulkhead.increment();
+            throw new StatUnavailableException("Stat service bulkhead is full");
+        }
+        try {
+            if (!circuitBreaker.tryAcquire()) {
+                rejectedByCircuit.increment();
+                throw new StatUnavailableException("Stat service circuit breaker is open");
+            }
+            boolean settled = false;
+            try {
+                T result = request.apply(restClients.get(operation));
+                circuitBreaker.onSuccess();
+                settled = true;
+                return result;
+            } catch (RuntimeException e) {
+                if (isClientError(e)) {
+                    circuitBreaker.onSuccess();
+                } else {
+                    circuitBreaker.onFailure();
+                }
+                settled = true;
+                throw e;
+            } finally {
+                // Вызов, прерванный Error, ничего не говорит о сервисе, но пробный вызов должен освободиться
+                if (!settled) {
+                    circuitBreaker.release();
+                }
+            }
+        } finally {
+            if (bulkheaded) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    // Пачка хитов в POST /hits/batch в формате stat.client.transport.hits-format
+    public void postHits(List<EndpointHitDto> hits) {
+        call(Operation.HITS, restClient -> {
+            RestClient.RequestBodySpec request = restClient.post().uri("/hits/batch");
+            if (hitsFormat == HitsFormat.BINARY) {
+                request.contentType(MediaType.parseMediaType(HitBatchCodec.MEDIA_TYPE))
+                        .body(HitBatchCodec.encode(hits));
+            } else {
+                request.contentType(MediaType.APPLICATION_JSON)
+                        .body(hits);
+            }
+            return request.retrieve().toBodilessEntity();
+        });
+    }
+
+    private CloseableHttpClient httpClient(Duration poolTimeout, Duration responseTimeout) {
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                        .setResponseTimeout(Timeout.of(responseTimeout))
+                        .build())
+                .build();
+    }
+
+    private boolean acquireBulkhead() {
+        try {
+            return bulkhead.tryAcquire(bulkheadWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Ответ 4xx означает ошибку запроса, а не недоступность сервиса, и цепь не размыкает
+    private static boolean isClientError(RuntimeException e) {
+        if (e instanceof RestClientResponseException response) {
+            return response.getStatusCode().is4xxClientError();
+        }
+        return e instanceof ResponseStatusException status && status.getStatusCode().is4xxClientError();
+    }
+}
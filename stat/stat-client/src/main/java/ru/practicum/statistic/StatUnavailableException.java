@@ -0,0 +1,9 @@
+package ru.practicum.statistic;
+
+// Вызов сервиса статистики не выполнялся: разомкнут circuit breaker или занят bulkhead
+public class StatUnavailableException extends RuntimeException {
+
+    public StatUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,227 @@
+package ru.practicum.statistic;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Подписка на /stats/views/stream: держит в памяти просмотры всех uri, которые присылает stat-server.
+// События несут итоговые значения, а не приращения, поэтому повтор события после переподключения безвреден.
+// Переподключается с Last-Event-ID; при обрыве ждёт от 1 до 30 секунд.
+// Пока поток молчит дольше stale-after, isLive() ложно и StatClient читает просмотры по HTTP;
+// такое соединение закрывается сторожем и открывается заново
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stat.client.view-stream.enabled", havingValue = "true")
+public class ViewStream {
+
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    private static final TypeReference<List<ViewCountDto>> COUNTS = new TypeReference<>() {
+    };
+
+    private final URI streamUri;
+    private final long staleAfterNanos;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final Thread reader;
+    private final Thread watchdog;
+    private final AtomicReference<InputStream> body = new AtomicReference<>();
+
+    // Заменяется целиком при каждом снимке
+    private volatile Map<String, ViewCountDto> counts;
+    private volatile String lastEventId;
+    private volatile long lastReceived;
+    private volatile boolean running = true;
+
+    public ViewStream(@Value("${stat.server.url}") String serverUrl,
+                      @Value("${stat.client.transport.connect-timeout:1s}") Duration connectTimeout,
+                      @Value("${stat.client.view-stream.stale-after:45s}") Duration staleAfter,
+                      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                      ObjectMapper objectMapper) {
+        this.streamUri = URI.create(serverUrl + "/stats/views/stream");
+        this.staleAfterNanos = staleAfter.toNanos();
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .build();
+        this.reader = (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon())
+                .name("stat-view-stream")
+                .start(this::run);
+        this.watchdog = (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon())
+                .name("stat-view-stream-watchdog")
+                .start(this::watch);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        closeBody();
+        reader.interrupt();
+        watchdog.interrupt();
+    }
+
+    // Просмотры загружены снимком и поток не молчал дольше stale-after
+    public boolean isLive() {
+        return counts != null && System.nanoTime() - lastReceived < staleAfterNanos;
+    }
+
+    // Просмотры uri из памяти. stat-server отслеживает не все uri, поэтому uri, которых поток не присылал,
+    // в ответе нет: их просмотры читаются по HTTP
+    public Map<String, Long> views(List<String> uris, boolean unique) {
+        Map<String, ViewCountDto> current = counts;
+        Map<String, Long> views = new HashMap<>();
+        for (String uri : uris) {
+            ViewCountDto count = current != null ? current.get(uri) : null;
+            if (count != null) {
+                views.put(uri, unique ? count.getUnique() : count.getHits());
+            }
+        }
+        return views;
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF.toMillis();
+        while (running) {
+            try {
+                if (consume()) {
+                    backoff = MIN_BACKOFF.toMillis();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Поток просмотров прерван: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF.toMillis());
+        }
+    }
+
+    private void watch() {
+        long period = Math.max(staleAfterNanos / 3, 1_000_000L);
+        while (running) {
+            try {
+                Thread.sleep(Duration.ofNanos(period));
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (body.get() != null && System.nanoTime() - lastReceived >= staleAfterNanos) {
+                log.warn("Поток просмотров молчит дольше {} с, переподключение", staleAfterNanos / 1_000_000_000L);
+                closeBody();
+            }
+        }
+    }
+
+    // Читает поток до обрыва; true, если получено хотя бы одно событие
+    private boolean consume() throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(streamUri)
+                .header("Accept", "text/event-stream")
+                .GET();
+        String position = lastEventId;
+        if (position != null) {
+            request.header("Last-Event-ID", position);
+        }
+        HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Stat service responded " + response.statusCode());
+        }
+        lastReceived = System.nanoTime();
+        body.set(response.body());
+        log.info("Подписка на поток просмотров: {}", position == null ? "со снимка" : "с " + position);
+
+        boolean received = false;
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String event = null;
+            String id = null;
+            StringBuilder data = new StringBuilder();
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lastReceived = System.nanoTime();
+                if (line.isEmpty()) {
+                    if (event != null && !data.isEmpty()) {
+                        apply(event, data.toString());
+                        received = true;
+                    }
+                    if (id != null) {
+                        lastEventId = id;
+                    }
+                    event = null;
+                    id = null;
+                    data.setLength(0);
+                } else if (line.startsWith("event:")) {
+                    event = line.substring(6).strip();
+                } else if (line.startsWith("id:")) {
+                    id = line.substring(3).strip();
+                } else if (line.startsWith("data:")) {
+                    if (!data.isEmpty()) {
+                        data.append('\n');
+                    }
+                    data.append(line.substring(5).strip());
+                }
+                // строки-комментарии (heartbeat) только обновляют lastReceived
+            }
+        } finally {
+            body.set(null);
+        }
+        return received;
+    }
+
+    private void apply(String event, String data) throws IOException {
+        List<ViewCountDto> update = objectMapper.readValue(data, COUNTS);
+        if ("snapshot".equals(event)) {
+            Map<String, ViewCountDto> snapshot = new ConcurrentHashMap<>(update.size() * 2);
+            update.forEach(count -> snapshot.put(count.getUri(), count));
+            counts = snapshot;
+            log.info("Снимок просмотров получен: {} uri", snapshot.size());
+        } else if ("views".equals(event)) {
+            Map<String, ViewCountDto> current = counts;
+            if (current != null) {
+                update.forEach(count -> {
+                    if (count.isEvicted()) {
+                        current.remove(count.getUri());
+                    } else {
+                        current.put(count.getUri(), count);
+                    }
+                });
+            }
+        }
+    }
+
+    private void closeBody() {
+        InputStream stream = body.getAndSet(null);
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // поток и так закрывается
+            }
+        }
+    }
+}
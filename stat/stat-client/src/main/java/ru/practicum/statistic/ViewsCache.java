@@ -0,0 +1,195 @@
+package ru.practicum.statistic;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Кэш просмотров по (uri, unique, начало отсчёта).
+// Значение моложе ttl отдаётся как есть; от ttl до max-stale отдаётся старое, а обновление идёт в фоне;
+// старше max-stale или отсутствующее загружается синхронно. Одновременные запросы одного ключа
+// ждут одну загрузку, так что нагрузка на сервис статистики растёт с числом разных uri, а не просмотров.
+// Пока сервис статистики недоступен или цепь разомкнута, отдаются последние известные значения или 0.
+// Хит по uri (invalidate) устаревает все значения этого uri, загруженные до него: следующее чтение
+// загружает их синхронно и видит этот хит, даже если ttl ещё не истёк.
+@Slf4j
+@Component
+public class ViewsCache {
+
+    private final long ttlNanos;
+    private final long maxStaleNanos;
+    private final int maxEntries;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+    // Время последнего хита по uri, System.nanoTime()
+    private final ConcurrentMap<String, Long> hitAt = new ConcurrentHashMap<>();
+    private final ExecutorService refresher;
+
+    public ViewsCache(@Value("${stat.client.views.ttl:5s}") Duration ttl,
+                      @Value("${stat.client.views.max-stale:60s}") Duration maxStale,
+                      @Value("${stat.client.views.max-entries:100000}") int maxEntries,
+                      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxStaleNanos = Math.max(maxStale.toNanos(), ttlNanos);
+        this.maxEntries = maxEntries;
+        this.refresher = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stat-views-refresh-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("stat-views-refresh-", 0).factory());
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    public void invalidate(String uri) {
+        hitAt.put(uri, System.nanoTime());
+    }
+
+    // since — начало отсчёта для каждого uri. loader получает uri без свежего значения с их началом отсчёта
+    // и возвращает просмотры по ним. uri без значения в ответе считаются не загруженными: для них, как и при ошибке
+    // загрузки, отдаётся последнее известное значение или 0.
+    public Map<String, Long> get(Map<String, LocalDateTime> since, boolean unique,
+                                 Function<Map<String, LocalDateTime>, Map<String, Long>> loader) {
+        long now = System.nanoTime();
+        Map<String, Long> result = new HashMap<>();
+        List<Key> refresh = new ArrayList<>();
+        Map<Key, CompletableFuture<Long>> awaited = new HashMap<>();
+        List<Key> owned = new ArrayList<>();
+
+        for (Map.Entry<String, LocalDateTime> uri : since.entrySet()) {
+            Key key = new Key(uri.getKey(), unique, uri.getValue());
+            Entry entry = entries.get(key);
+            long age = entry == null || hitSince(key.uri(), entry.loadedAt())
+                    ? Long.MAX_VALUE
+                    : now - entry.loadedAt();
+            if (age <= ttlNanos) {
+                result.put(key.uri(), entry.views());
+            } else if (age <= maxStaleNanos) {
+                result.put(key.uri(), entry.views());
+                refresh.add(key);
+            } else {
+                CompletableFuture<Long> mine = new CompletableFuture<>();
+                CompletableFuture<Long> running = inFlight.putIfAbsent(key, mine);
+                if (running == null) {
+                    owned.add(key);
+                    awaited.put(key, mine);
+                } else {
+                    awaited.put(key, running);
+                }
+            }
+        }
+
+        if (!refresh.isEmpty()) {
+            List<Key> claimed = claim(refresh);
+            if (!claimed.isEmpty()) {
+                refresher.execute(() -> load(claimed, loader));
+            }
+        }
+        if (!owned.isEmpty()) {
+            load(owned, loader);
+        }
+        awaited.forEach((key, future) -> result.put(key.uri(), await(key, future)));
+        return result;
+    }
+
+    private boolean hitSince(String uri, long loadedAt) {
+        Long hit = hitAt.get(uri);
+        return hit != null && hit - loadedAt >= 0;
+    }
+
+    private List<Key> claim(List<Key> keys) {
+        List<Key> claimed = new ArrayList<>();
+        for (Key key : keys) {
+            if (inFlight.putIfAbsent(key, new CompletableFuture<>()) == null) {
+                claimed.add(key);
+            }
+        }
+        return claimed;
+    }
+
+    // Загружает ключи одним запросом и завершает их ожидающие future.
+    // Значение помечается временем начала загрузки: хит во время загрузки мог в неё не попасть
+    private void load(List<Key> keys, Function<Map<String, LocalDateTime>, Map<String, Long>> loader) {
+        try {
+            Map<String, LocalDateTime> since = new HashMap<>();
+            keys.forEach(key -> since.put(key.uri(), key.since()));
+            long loadedAt = System.nanoTime();
+            Map<String, Long> loaded = loader.apply(since);
+            for (Key key : keys) {
+                Long views = loaded.get(key.uri());
+                if (views == null) {
+                    inFlight.remove(key).completeExceptionally(new StatUnavailableException("Views were not loaded"));
+                    continue;
+                }
+                entries.put(key, new Entry(views, loadedAt));
+                inFlight.remove(key).complete(views);
+            }
+            trim(loadedAt);
+        } catch (RuntimeException e) {
+            if (e instanceof StatUnavailableException) {
+                log.debug("Просмотры не обновлены: {}", e.getMessage());
+            } else {
+                log.warn("Не удалось обновить просмотры для {} uri", keys.size(), e);
+            }
+            for (Key key : keys) {
+                inFlight.remove(key).completeExceptionally(e);
+            }
+        }
+    }
+
+    private long await(Key key, CompletableFuture<Long> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // ниже отдаётся последнее известное значение
+        }
+        Entry entry = entries.get(key);
+        return entry == null ? 0L : entry.views();
+    }
+
+    // Сначала удаляются значения и хиты старше max-stale, если этого мало — произвольные.
+    // Хит старше max-stale ничего не устаревает: загруженное до него значение и так старше max-stale
+    private void trim(long now) {
+        if (entries.size() > maxEntries) {
+            entries.values().removeIf(entry -> now - entry.loadedAt() > maxStaleNanos);
+            trimTo(entries);
+        }
+        if (hitAt.size() > maxEntries) {
+            hitAt.values().removeIf(hit -> now - hit > maxStaleNanos);
+            trimTo(hitAt);
+        }
+    }
+
+    private void trimTo(Map<?, ?> map) {
+        Iterator<?> iterator = map.keySet().iterator();
+        while (map.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private record Key(String uri, boolean unique, LocalDateTime since) {
+    }
+
+    private record Entry(long views, long loadedAt) {
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.statistic;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.statistic.HitCaptureFilter.UriRule;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitCaptureFilterTest {
+
+    // Правила main-service из application.properties
+    private static final List<UriRule> RULES = List.of(
+            UriRule.parse("/events=1.0"),
+            UriRule.parse("/events/facets=0"),
+            UriRule.parse("/events/*=1.0"));
+
+    @Test
+    void parsesPatternAndRate() {
+        assertThat(UriRule.parse(" /events/* = 0.25 ")).isEqualTo(new UriRule("/events/*", 0.25));
+        assertThat(UriRule.parse("/events")).isEqualTo(new UriRule("/events", 1));
+    }
+
+    @Test
+    void rejectsRateOutsideUnitInterval() {
+        assertThatThrownBy(() -> UriRule.parse("/events=1.5")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UriRule.parse("/events=-0.1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UriRule.parse("/events=often")).isInstanceOf(NumberFormatException.class);
+    }
+
+    @Test
+    void matchesLiteralPatternExactly() {
+        UriRule rule = new UriRule("/events", 1);
+
+        assertThat(rule.matches("/events")).isTrue();
+        assertThat(rule.matches("/events/")).isFalse();
+        assertThat(rule.matches("/events/1")).isFalse();
+        assertThat(rule.matches("/event")).isFalse();
+        assertThat(rule.matches("/eventsx")).isFalse();
+    }
+
+    @Test
+    void starMatchesSingleNonEmptySegment() {
+        UriRule rule = new UriRule("/events/*", 1);
+
+        assertThat(rule.matches("/events/1")).isTrue();
+        assertThat(rule.matches("/events/facets")).isTrue();
+        assertThat(rule.matches("/events/")).isFalse();
+        assertThat(rule.matches("/events")).isFalse();
+        assertThat(rule.matches("/events/1/requests")).isFalse();
+    }
+
+    @Test
+    void starInTheMiddleOfPattern() {
+        UriRule rule = new UriRule("/users/*/events", 1);
+
+        assertThat(rule.matches("/users/7/events")).isTrue();
+        assertThat(rule.matches("/users//events")).isFalse();
+        assertThat(rule.matches("/users/7/8/events")).isFalse();
+        assertThat(rule.matches("/users/7/events/1")).isFalse();
+    }
+
+    @Test
+    void trailingDoubleStarMatchesAnyRemainder() {
+        UriRule rule = new UriRule("/events/**", 1);
+
+        assertThat(rule.matches("/events")).isTrue();
+        assertThat(rule.matches("/events/")).isTrue();
+        assertThat(rule.matches("/events/1")).isTrue();
+        assertThat(rule.matches("/events/1/requests")).isTrue();
+        assertThat(rule.matches("/eventsx")).isFalse();
+        assertThat(rule.matches("/compilations")).isFalse();
+    }
+
+    @Test
+    void facetsAreNotSampledAlthoughEventStarMatches() {
+        assertThat(firstMatch("/events/facets")).isEqualTo(new UriRule("/events/facets", 0));
+        assertThat(new UriRule("/events/*", 1).matches("/events/facets")).isTrue();
+    }
+
+    @Test
+    void firstMatchingRuleWins() {
+        assertThat(firstMatch("/events")).isEqualTo(new UriRule("/events", 1));
+        assertThat(firstMatch("/events/42")).isEqualTo(new UriRule("/events/*", 1));
+        assertThat(firstMatch("/events/42/comments")).isNull();
+        assertThat(firstMatch("/admin/events")).isNull();
+    }
+
+    // Правило, которое выберет фильтр: первое подходящее по порядку
+    private static UriRule firstMatch(String uri) {
+        return RULES.stream().filter(rule -> rule.matches(uri)).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,148 @@
+package ru.practicum.statistic;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// StatClient против поддельного сервиса статистики: хит виден следующему чтению просмотров,
+// хотя HitSender держит его в очереди дольше, чем идёт чтение, а ViewsCache хранит значение дольше теста
+class StatClientViewsTest {
+
+    private static final String URI = "/events/1";
+    private static final Map<String, LocalDateTime> SINCE = Map.of(URI, LocalDateTime.of(2024, 1, 1, 0, 0));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<EndpointHitDto> storedHits = new ArrayList<>();
+    private final AtomicInteger statsQueries = new AtomicInteger();
+
+    private HttpServer server;
+    private StatTransport transport;
+    private HitSender hitSender;
+    private StatClient statClient;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/hits/batch", this::storeHits);
+        server.createContext("/stats/query", this::queryStats);
+        server.start();
+
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        transport = new StatTransport("http://localhost:" + server.getAddress().getPort(), 10,
+                Duration.ofSeconds(1), Duration.ofMillis(200), Duration.ofSeconds(2), Duration.ofSeconds(2),
+                StatTransport.HitsFormat.JSON, 20, 50, Duration.ofSeconds(10), 20, Duration.ZERO,
+                beans.getBeanProvider(MeterRegistry.class));
+        // linger дольше всего теста: хит доходит до сервиса статистики только через flush
+        hitSender = new HitSender(transport, 100, 500, Duration.ofMinutes(1), HitSender.OverflowPolicy.DROP,
+                Duration.ZERO, Duration.ofSeconds(5), false, Optional.empty(),
+                beans.getBeanProvider(MeterRegistry.class));
+        hitSender.start();
+        ViewsCache viewsCache = new ViewsCache(Duration.ofMinutes(1), Duration.ofMinutes(2), 1000, false);
+        statClient = new StatClient(transport, "ewm-main-service", hitSender, viewsCache,
+                beans.getBeanProvider(ViewStream.class), 200, Duration.ofSeconds(3), false,
+                beans.getBeanProvider(MeterRegistry.class));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        hitSender.stop();
+        statClient.stop();
+        transport.close();
+        server.stop(0);
+    }
+
+    // Как в проверке поля views из postman/main-service.json: два просмотра события с одного адреса,
+    // затем третий видит один уникальный просмотр
+    @Test
+    void readSeesOwnHits() {
+        assertThat(statClient.getViews(SINCE, true)).containsEntry(URI, 0L);
+        statClient.hit(request("192.168.0.1"));
+
+        assertThat(statClient.getViews(SINCE, true)).containsEntry(URI, 1L);
+        statClient.hit(request("192.168.0.1"));
+
+        assertThat(statClient.getViews(SINCE, true)).containsEntry(URI, 1L);
+        assertThat(statClient.getViews(SINCE, false)).containsEntry(URI, 2L);
+    }
+
+    @Test
+    void readsWithoutHitsAreServedFromCache() {
+        statClient.getViews(SINCE, true);
+        statClient.getViews(SINCE, true);
+        statClient.getViews(SINCE, true);
+
+        assertThat(statsQueries).hasValue(1);
+    }
+
+    @Test
+    void hitOnOtherUriKeepsCachedViews() {
+        statClient.getViews(SINCE, true);
+        MockHttpServletRequest other = request("192.168.0.1");
+        other.setRequestURI("/events/2");
+        statClient.hit(other);
+
+        assertThat(statClient.getViews(SINCE, true)).containsEntry(URI, 0L);
+        assertThat(statsQueries).hasValue(1);
+    }
+
+    private static MockHttpServletRequest request(String ip) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", URI);
+        request.setRemoteAddr(ip);
+        return request;
+    }
+
+    private void storeHits(HttpExchange exchange) throws IOException {
+        List<EndpointHitDto> hits = objectMapper.readValue(exchange.getRequestBody(), new TypeReference<>() {});
+        synchronized (storedHits) {
+            storedHits.addAll(hits);
+        }
+        exchange.sendResponseHeaders(201, -1);
+        exchange.close();
+    }
+
+    // Как stat-server: uri без хитов в ответе нет
+    private void queryStats(HttpExchange exchange) throws IOException {
+        statsQueries.incrementAndGet();
+        StatsQueryDto query = objectMapper.readValue(exchange.getRequestBody(), StatsQueryDto.class);
+        List<ViewStatsDto> stats = new ArrayList<>();
+        synchronized (storedHits) {
+            for (String uri : query.getUris()) {
+                List<EndpointHitDto> hits = storedHits.stream().filter(hit -> hit.getUri().equals(uri)).toList();
+                long count = query.isUnique()
+                        ? hits.stream().map(EndpointHitDto::getIp).distinct().count()
+                        : hits.size();
+                if (count > 0) {
+                    ViewStatsDto dto = new ViewStatsDto();
+                    dto.setApp("ewm-main-service");
+                    dto.setUri(uri);
+                    dto.setHits(count);
+                    stats.add(dto);
+                }
+            }
+        }
+        byte[] body = objectMapper.writeValueAsBytes(stats);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
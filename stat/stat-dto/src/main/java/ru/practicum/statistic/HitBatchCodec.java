@@ -0,0 +1,202 @@
+package ru.practicum.statistic;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Двоичное тело POST /hits/batch (Content-Type application/x-ewm-hit-batch), JSON остаётся форматом по умолчанию.
+// Формат: версия; словарь строк app и uri; число записей; записи с префиксом длины:
+// индекс app, индекс uri, ip, метка в миллисекундах эпохи. Целые — varint, строки — длина и UTF-8.
+// Метка без часового пояса, как и yyyy-MM-dd HH:mm:ss в JSON: миллисекунды считаются от локального времени как UTC.
+public final class HitBatchCodec {
+
+    public static final String MEDIA_TYPE = "application/x-ewm-hit-batch";
+
+    private static final int VERSION = 1;
+
+    private HitBatchCodec() {
+    }
+
+    @FunctionalInterface
+    public interface HitSink {
+        void accept(String app, String uri, String ip, LocalDateTime timestamp);
+    }
+
+    public static byte[] encode(List<EndpointHitDto> hits) {
+        Map<String, Integer> dictionary = new HashMap<>();
+        Output strings = new Output(256);
+        Output records = new Output(hits.size() * 24);
+        Output record = new Output(64);
+        for (EndpointHitDto hit : hits) {
+            record.reset();
+            record.writeVarLong(index(dictionary, strings, hit.getApp()));
+            record.writeVarLong(index(dictionary, strings, hit.getUri()));
+            record.writeString(hit.getIp());
+            record.writeVarLong(parseTimestamp(hit.getTimestamp()));
+            records.writeVarLong(record.size());
+            records.write(record);
+        }
+
+        Output body = new Output(strings.size() + records.size() + 16);
+        body.writeVarLong(VERSION);
+        body.writeVarLong(dictionary.size());
+        body.write(strings);
+        body.writeVarLong(hits.size());
+        body.write(records);
+        return body.toByteArray();
+    }
+
+    // IllegalArgumentException, если тело повреждено или версия не поддерживается
+    public static void decode(byte[] body, HitSink sink) {
+        Input in = new Input(body);
+        long version = in.readVarLong();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported hit batch version: " + version);
+        }
+        String[] dictionary = new String[in.readCount()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readString();
+        }
+        int count = in.readCount();
+        for (int i = 0; i < count; i++) {
+            int end = in.readCount();
+            end += in.position;
+            String app = dictionary[in.readIndex(dictionary.length)];
+            String uri = dictionary[in.readIndex(dictionary.length)];
+            String ip = in.readString();
+            long millis = in.readVarLong();
+            // Поля, добавленные в следующих версиях записи, пропускаются
+            in.skipTo(end);
+            sink.accept(app, uri, ip, LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                    (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC));
+        }
+    }
+
+    private static int index(Map<String, Integer> dictionary, Output strings, String value) {
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.put(value, index);
+            strings.writeString(value);
+        }
+        return index;
+    }
+
+    // yyyy-MM-dd HH:mm:ss разбирается по позициям, без DateTimeFormatter
+    private static long parseTimestamp(String timestamp) {
+        if (timestamp == null || timestamp.length() != 19) {
+            throw new IllegalArgumentException("Invalid hit timestamp: " + timestamp);
+        }
+        LocalDateTime time;
+        try {
+            time = LocalDateTime.of(digits(timestamp, 0, 4), digits(timestamp, 5, 2),
+                    digits(timestamp, 8, 2), digits(timestamp, 11, 2), digits(timestamp, 14, 2),
+                    digits(timestamp, 17, 2));
+        } catch (DateTimeException e) {
+            // Несуществующая дата вроде 30 февраля
+            throw new IllegalArgumentException("Invalid hit timestamp: " + timestamp, e);
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1000;
+    }
+
+    private static int digits(String value, int from, int length) {
+        int result = 0;
+        for (int i = from; i < from + length; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Invalid hit timestamp: " + value);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void write(Output other) {
+            write(other.buf, 0, other.count);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed hit batch: varint is too long");
+        }
+
+        int readCount() {
+            long value = readVarLong();
+            if (value < 0 || value > bytes.length - position) {
+                throw new IllegalArgumentException("Malformed hit batch: length exceeds body");
+            }
+            return (int) value;
+        }
+
+        int readIndex(int size) {
+            long value = readVarLong();
+            if (value < 0 || value >= size) {
+                throw new IllegalArgumentException("Malformed hit batch: unknown dictionary index " + value);
+            }
+            return (int) value;
+        }
+
+        String readString() {
+            int length = readCount();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skipTo(int end) {
+            if (position > end) {
+                throw new IllegalArgumentException("Malformed hit batch: record overruns its length");
+            }
+            position = end;
+        }
+
+        private byte readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Malformed hit batch: unexpected end of body");
+            }
+            return bytes[position++];
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.statistic;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Тело POST /stats/query: start и end в формате yyyy-MM-dd HH:mm:ss, uriPatterns вида /events/*
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class StatsQueryDto {
+    private String start;
+    private String end;
+    private List<String> uris;
+    private List<String> uriPatterns;
+    private boolean unique;
+    private Integer limit;
+}
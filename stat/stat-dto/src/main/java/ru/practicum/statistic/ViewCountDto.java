@@ -0,0 +1,17 @@
+package ru.practicum.statistic;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Событие /stats/views/stream: просмотры uri за всё время, hits — все хиты, unique — уникальные ip.
+// evicted — uri больше не отслеживается потоком
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewCountDto {
+    private String uri;
+    private long hits;
+    private long unique;
+    private boolean evicted;
+}
@@ -0,0 +1,221 @@
+package ru.practicum.statistic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitBatchCodecTest {
+
+    @Test
+    void roundTripsHits() {
+        List<EndpointHitDto> hits = List.of(
+                hit("ewm-main-service", "/events/1", "192.168.0.1", "2024-01-01 12:00:00"),
+                hit("ewm-main-service", "/events/1", "10.0.0.2", "2024-01-01 12:00:01"),
+                hit("ewm-main-service", "/events", "2001:db8::1", "2024-02-29 23:59:59"),
+                hit("другое-приложение", "/события/☃", "127.0.0.1", "1969-12-31 23:59:59"));
+
+        assertThat(decode(HitBatchCodec.encode(hits))).containsExactly(
+                new Hit("ewm-main-service", "/events/1", "192.168.0.1", LocalDateTime.of(2024, 1, 1, 12, 0, 0)),
+                new Hit("ewm-main-service", "/events/1", "10.0.0.2", LocalDateTime.of(2024, 1, 1, 12, 0, 1)),
+                new Hit("ewm-main-service", "/events", "2001:db8::1", LocalDateTime.of(2024, 2, 29, 23, 59, 59)),
+                new Hit("другое-приложение", "/события/☃", "127.0.0.1", LocalDateTime.of(1969, 12, 31, 23, 59, 59)));
+    }
+
+    @Test
+    void roundTripsEmptyBatch() {
+        assertThat(decode(HitBatchCodec.encode(List.of()))).isEmpty();
+    }
+
+    @Test
+    void storesRepeatedAppAndUriOnce() {
+        List<EndpointHitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            hits.add(hit("ewm-main-service", "/events/1", "192.168.0.1", "2024-01-01 12:00:00"));
+        }
+
+        byte[] body = HitBatchCodec.encode(hits);
+
+        assertThat(occurrences(body, "ewm-main-service".getBytes(StandardCharsets.UTF_8))).isEqualTo(1);
+        assertThat(occurrences(body, "/events/1".getBytes(StandardCharsets.UTF_8))).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsInvalidTimestampOnEncode() {
+        assertThatThrownBy(() -> HitBatchCodec.encode(List.of(hit("app", "/", "1.1.1.1", "2024-01-01T12:00:00Z"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid hit timestamp");
+        assertThatThrownBy(() -> HitBatchCodec.encode(List.of(hit("app", "/", "1.1.1.1", "2024-01-01 1a:00:00"))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HitBatchCodec.encode(List.of(hit("app", "/", "1.1.1.1", "2024-02-30 12:00:00"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid hit timestamp");
+        assertThatThrownBy(() -> HitBatchCodec.encode(List.of(hit("app", "/", "1.1.1.1", "2024-01-01 24:00:00"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid hit timestamp");
+    }
+
+    @Test
+    void skipsRecordFieldsAddedInLaterVersions() {
+        Body body = new Body().varint(1).varint(2).string("app").string("/uri").varint(1);
+        Body record = new Body().varint(0).varint(1).string("1.1.1.1").varint(1_000).string("extra field");
+        body.varint(record.size()).bytes(record.toByteArray());
+
+        assertThat(decode(body.toByteArray())).containsExactly(
+                new Hit("app", "/uri", "1.1.1.1", LocalDateTime.of(1970, 1, 1, 0, 0, 1)));
+    }
+
+    @Test
+    void rejectsUnsupportedVersion() {
+        assertThatThrownBy(() -> decode(new Body().varint(2).varint(0).varint(0).toByteArray()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unsupported hit batch version: 2");
+    }
+
+    @Test
+    void rejectsEveryTruncation() {
+        byte[] body = HitBatchCodec.encode(List.of(
+                hit("ewm-main-service", "/events/1", "192.168.0.1", "2024-01-01 12:00:00"),
+                hit("ewm-main-service", "/events/2", "192.168.0.2", "2024-01-01 12:00:01")));
+
+        for (int length = 0; length < body.length; length++) {
+            byte[] truncated = Arrays.copyOf(body, length);
+            assertThatThrownBy(() -> decode(truncated))
+                    .as("body truncated to %d of %d bytes", length, body.length)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void rejectsUnknownDictionaryIndex() {
+        Body record = new Body().varint(0).varint(5).string("1.1.1.1").varint(0);
+        byte[] body = new Body().varint(1).varint(1).string("app").varint(1)
+                .varint(record.size()).bytes(record.toByteArray()).toByteArray();
+
+        assertThatThrownBy(() -> decode(body))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unknown dictionary index 5");
+    }
+
+    @Test
+    void rejectsRecordOverrunningItsLength() {
+        Body record = new Body().varint(0).varint(0).string("1.1.1.1").varint(0);
+        byte[] body = new Body().varint(1).varint(1).string("app").varint(1)
+                .varint(record.size() - 1).bytes(record.toByteArray()).toByteArray();
+
+        assertThatThrownBy(() -> decode(body))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("record overruns its length");
+    }
+
+    @Test
+    void rejectsLengthBeyondBody() {
+        byte[] body = new Body().varint(1).varint(1).varint(1_000).bytes("app".getBytes(StandardCharsets.UTF_8))
+                .toByteArray();
+
+        assertThatThrownBy(() -> decode(body))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("length exceeds body");
+    }
+
+    @Test
+    void rejectsNegativeCountsAndIndices() {
+        assertThatThrownBy(() -> decode(new Body().varint(1).varint(-1).toByteArray()))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        Body record = new Body().varint(-1).varint(0).string("1.1.1.1").varint(0);
+        byte[] body = new Body().varint(1).varint(1).string("app").varint(1)
+                .varint(record.size()).bytes(record.toByteArray()).toByteArray();
+        assertThatThrownBy(() -> decode(body))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unknown dictionary index");
+    }
+
+    @Test
+    void rejectsOverlongVarint() {
+        byte[] body = new byte[11];
+        Arrays.fill(body, (byte) 0x80);
+
+        assertThatThrownBy(() -> decode(body))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("varint is too long");
+    }
+
+    // Повреждённое тело либо разбирается, либо отклоняется IllegalArgumentException (400), но не другим исключением
+    @Test
+    void corruptBodiesFailOnlyWithIllegalArgument() {
+        List<EndpointHitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            hits.add(hit("ewm-main-service", "/events/" + i % 7, "192.168.0." + i, "2024-01-01 12:00:%02d".formatted(i)));
+        }
+        byte[] body = HitBatchCodec.encode(hits);
+        Random random = new Random(42);
+
+        for (int attempt = 0; attempt < 10_000; attempt++) {
+            byte[] corrupt = body.clone();
+            for (int flips = 1 + random.nextInt(3); flips > 0; flips--) {
+                corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+            }
+            try {
+                decode(corrupt);
+            } catch (IllegalArgumentException e) {
+                // ожидаемый отказ
+            }
+        }
+    }
+
+    private static EndpointHitDto hit(String app, String uri, String ip, String timestamp) {
+        return EndpointHitDto.builder().app(app).uri(uri).ip(ip).timestamp(timestamp).build();
+    }
+
+    private static List<Hit> decode(byte[] body) {
+        List<Hit> hits = new ArrayList<>();
+        HitBatchCodec.decode(body, (app, uri, ip, timestamp) -> hits.add(new Hit(app, uri, ip, timestamp)));
+        return hits;
+    }
+
+    private static int occurrences(byte[] body, byte[] value) {
+        int count = 0;
+        for (int i = 0; i <= body.length - value.length; i++) {
+            if (Arrays.equals(body, i, i + value.length, value, 0, value.length)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private record Hit(String app, String uri, String ip, LocalDateTime timestamp) {
+    }
+
+    // Тело, собранное вручную: varint и строки в кодировке HitBatchCodec
+    private static final class Body extends ByteArrayOutputStream {
+
+        Body varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+            return this;
+        }
+
+        Body string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            return bytes(bytes);
+        }
+
+        Body bytes(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+            return this;
+        }
+    }
+}
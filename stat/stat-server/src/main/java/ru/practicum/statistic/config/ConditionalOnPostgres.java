@@ -0,0 +1,18 @@
+package ru.practicum.statistic.config;
+
+import org.springframework.context.annotation.Conditional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Агрегаты, скетчи посетителей и секционирование endpoint_hits написаны на SQL PostgreSQL.
+// На другой БД (H2 локального профиля) такие бины не создаются, и /stats считается по сырым хитам
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Conditional(OnPostgresCondition.class)
+public @interface ConditionalOnPostgres {
+}
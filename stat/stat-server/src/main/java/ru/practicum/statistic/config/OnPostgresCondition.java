@@ -0,0 +1,19 @@
+package ru.practicum.statistic.config;
+
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+// БД определяется по spring.datasource.url, до создания DataSource
+public class OnPostgresCondition implements Condition {
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        return isPostgres(context.getEnvironment().getProperty("spring.datasource.url"));
+    }
+
+    public static boolean isPostgres(String jdbcUrl) {
+        return jdbcUrl != null && DatabaseDriver.fromJdbcUrl(jdbcUrl) == DatabaseDriver.POSTGRESQL;
+    }
+}
@@ -1,36 +1,88 @@
 package ru.practicum.statistic.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.statistic.HitBatchCodec;
 import ru.practicum.statistic.dto.EndpointHitRequest;
-import ru.practicum.statistic.dto.ViewStats;
-import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.dto.StatsQueryRequest;
+import ru.practicum.statistic.model.UriFilter;
 import ru.practicum.statistic.service.StatsService;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
+@Validated
 @RequiredArgsConstructor
 public class StatsController {
 
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
-    public EndpointHit saveHit(@RequestBody EndpointHitRequest hitRequest) {
-        return statsService.saveHit(hitRequest);
+    public void saveHit(@RequestBody EndpointHitRequest hitRequest) {
+        statsService.saveHit(hitRequest);
     }
 
+    @PostMapping("/hits/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void saveHits(@RequestBody List<@Valid EndpointHitRequest> hitRequests) {
+        statsService.saveHits(hitRequests);
+    }
+
+    // Та же пачка в двоичном формате HitBatchCodec: без разбора JSON и строковых дат
+    @PostMapping(value = "/hits/batch", consumes = HitBatchCodec.MEDIA_TYPE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void saveHitsBinary(@RequestBody byte[] body) {
+        List<EndpointHitRequest> hitRequests = new ArrayList<>();
+        HitBatchCodec.decode(body, (app, uri, ip, timestamp) -> {
+            if (app.isBlank() || uri.isBlank() || ip.isBlank()) {
+                throw new IllegalArgumentException("Hit app, uri and ip must not be blank");
+            }
+            EndpointHitRequest hitRequest = new EndpointHitRequest();
+            hitRequest.setApp(app);
+            hitRequest.setUri(uri);
+            hitRequest.setIp(ip);
+            hitRequest.setTimestamp(timestamp);
+            hitRequests.add(hitRequest);
+        });
+        statsService.saveHits(hitRequests);
+    }
+
+    // Ответ пишется в поток по мере чтения строк из БД, массив JSON открывается на первой строке
     @GetMapping("/stats")
-    public List<ViewStats> getStats(
+    public void getStats(
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
             @RequestParam(required = false) List<String> uris,
-            @RequestParam(defaultValue = "false") Boolean unique) {
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean exact,
+            @RequestParam(required = false) @Positive Integer limit,
+            HttpServletResponse response) throws IOException {
+
+        ViewStatsJsonWriter writer = new ViewStatsJsonWriter(objectMapper, response);
+        statsService.streamStats(start, end, UriFilter.of(uris), unique, exact, limit, writer);
+        writer.finish();
+    }
 
-        return statsService.getStats(start, end, uris, unique);
+    // То же, что GET /stats, но uri передаются в теле: большие наборы и шаблоны вида /events/*
+    @PostMapping("/stats/query")
+    public void queryStats(@RequestBody @Valid StatsQueryRequest query,
+                           HttpServletResponse response) throws IOException {
+        ViewStatsJsonWriter writer = new ViewStatsJsonWriter(objectMapper, response);
+        statsService.streamStats(query.getStart(), query.getEnd(),
+                new UriFilter(query.getUris(), query.getUriPatterns()),
+                query.isUnique(), query.isExact(), query.getLimit(), writer);
+        writer.finish();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+package ru.practicum.statistic.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import ru.practicum.statistic.dto.ViewStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+// Пишет ViewStats массивом JSON прямо в ответ. Ничего не отправляет до первой строки,
+// поэтому исключение до неё ещё обрабатывается ErrorHandler как обычно.
+class ViewStatsJsonWriter implements Consumer<ViewStats> {
+
+    private final ObjectMapper objectMapper;
+    private final HttpServletResponse response;
+    private JsonGenerator generator;
+
+    ViewStatsJsonWriter(ObjectMapper objectMapper, HttpServletResponse response) {
+        this.objectMapper = objectMapper;
+        this.response = response;
+    }
+
+    @Override
+    public void accept(ViewStats stats) {
+        try {
+            start();
+            generator.writeObject(stats);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void finish() throws IOException {
+        start();
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    private void start() throws IOException {
+        if (generator != null) {
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+        generator.writeStartArray();
+    }
+}
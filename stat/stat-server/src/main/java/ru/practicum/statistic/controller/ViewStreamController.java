@@ -0,0 +1,95 @@
+package ru.practicum.statistic.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+import ru.practicum.statistic.service.ViewTotals;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Поток изменений просмотров (SSE). Событие snapshot несёт все uri, событие views — изменившиеся uri,
+// id события — «epoch-номер» последнего изменения в нём. Переподключение с Last-Event-ID (или offset)
+// продолжает поток с этого места; если журнал его уже не хранит, сначала приходит snapshot.
+// Пока изменений нет, раз в heartbeat отправляется комментарий, чтобы клиент видел живое соединение.
+@Slf4j
+@RestController
+@ConditionalOnProperty(name = "stat.view-stream.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnPostgres
+public class ViewStreamController {
+
+    private static final int MAX_UPDATES_PER_EVENT = 1000;
+
+    private final ViewTotals viewTotals;
+    private final Duration heartbeat;
+    private final boolean virtualThreads;
+
+    public ViewStreamController(ViewTotals viewTotals,
+                                @Value("${stat.view-stream.heartbeat:15s}") Duration heartbeat,
+                                @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.viewTotals = viewTotals;
+        this.heartbeat = heartbeat;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @GetMapping(value = "/stats/views/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamViews(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                  @RequestParam(required = false) String offset) {
+        SseEmitter emitter = new SseEmitter(0L);
+        AtomicBoolean closed = new AtomicBoolean();
+        emitter.onCompletion(() -> closed.set(true));
+        emitter.onError(e -> closed.set(true));
+
+        String position = lastEventId != null ? lastEventId : offset;
+        // Подписчик держит свой поток всё время подписки
+        (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon())
+                .name("view-stream")
+                .start(() -> stream(emitter, closed, position));
+        return emitter;
+    }
+
+    private void stream(SseEmitter emitter, AtomicBoolean closed, String position) {
+        long epoch = -1;
+        long offset = -1;
+        if (position != null) {
+            int dash = position.indexOf('-');
+            try {
+                epoch = Long.parseLong(position.substring(0, dash));
+                offset = Long.parseLong(position.substring(dash + 1));
+            } catch (RuntimeException e) {
+                // неразборчивая позиция — поток начнётся со снимка
+            }
+        }
+
+        try {
+            while (!closed.get()) {
+                ViewTotals.Updates updates = viewTotals.read(epoch, offset, MAX_UPDATES_PER_EVENT, heartbeat);
+                epoch = viewTotals.getEpoch();
+                offset = updates.offset();
+                if (updates.snapshot()) {
+                    emitter.send(SseEmitter.event().name("snapshot").id(epoch + "-" + offset)
+                            .data(updates.counts(), MediaType.APPLICATION_JSON));
+                } else if (updates.counts().isEmpty()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    emitter.send(SseEmitter.event().name("views").id(epoch + "-" + offset)
+                            .data(updates.counts(), MediaType.APPLICATION_JSON));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // клиент отключился
+            log.debug("Подписчик потока просмотров отключился: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        emitter.complete();
+    }
+}
@@ -0,0 +1,33 @@
+package ru.practicum.statistic.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class StatsQueryRequest {
+    @NotNull
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start;
+
+    @NotNull
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime end;
+
+    private List<@NotBlank String> uris;
+
+    // * — любая последовательность символов: /events/* или /events/*/comments
+    private List<@NotBlank String> uriPatterns;
+
+    private boolean unique;
+
+    private boolean exact;
+
+    @Positive
+    private Integer limit;
+}
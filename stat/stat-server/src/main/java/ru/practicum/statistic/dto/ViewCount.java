@@ -0,0 +1,17 @@
+package ru.practicum.statistic.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Текущие просмотры uri за всё время по всем приложениям: hits — все хиты, unique — оценка уникальных ip.
+// evicted — uri вытеснен из памяти stat-server, его просмотры нужно читать через /stats
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ViewCount {
+    private String uri;
+    private long hits;
+    private long unique;
+    private boolean evicted;
+}
@@ -2,9 +2,13 @@ package ru.practicum.statistic.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.annotations.Formula;
 
 import java.time.LocalDateTime;
 
+// app и uri хранятся как id словарей endpoint_apps и endpoint_uris, ip — как inet.
+// Запись идёт через StatsRepositoryImpl.insertAll, сущность сопоставлена с таблицей только для чтения.
 @Entity
 @Table(name = "endpoint_hits")
 @Getter
@@ -17,12 +21,13 @@ public class EndpointHit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    @Formula("(SELECT a.name FROM endpoint_apps a WHERE a.id = app_id)")
     private String app;
 
-    @Column(nullable = false)
+    @Formula("(SELECT u.uri FROM endpoint_uris u WHERE u.id = uri_id)")
     private String uri;
 
+    @ColumnTransformer(read = "host(ip)", write = "?::inet")
     @Column(nullable = false)
     private String ip;
 
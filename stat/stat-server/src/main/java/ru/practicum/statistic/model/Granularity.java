@@ -0,0 +1,42 @@
+package ru.practicum.statistic.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum Granularity {
+    MINUTE("endpoint_hits_minute", null, ChronoUnit.MINUTES),
+    HOUR("endpoint_hits_hour", "endpoint_visitors_hour", ChronoUnit.HOURS),
+    DAY("endpoint_hits_day", "endpoint_visitors_day", ChronoUnit.DAYS);
+
+    private final String table;
+    private final String visitorTable;
+    private final ChronoUnit unit;
+
+    Granularity(String table, String visitorTable, ChronoUnit unit) {
+        this.table = table;
+        this.visitorTable = visitorTable;
+        this.unit = unit;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    // Скетчи уникальных посетителей хранятся только начиная с часовых бакетов
+    public String getVisitorTable() {
+        return visitorTable;
+    }
+
+    public String getTruncUnit() {
+        return name().toLowerCase();
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+}
@@ -0,0 +1,4 @@
+package ru.practicum.statistic.model;
+
+public record StatKey(String app, String uri) {
+}
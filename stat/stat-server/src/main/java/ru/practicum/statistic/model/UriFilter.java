@@ -0,0 +1,25 @@
+package ru.practicum.statistic.model;
+
+import java.util.List;
+
+// Отбор uri для /stats: точные значения и шаблоны, где * — любая последовательность символов (/events/*).
+// Пустой фильтр означает все uri.
+public record UriFilter(List<String> uris, List<String> patterns) {
+
+    public UriFilter {
+        uris = uris == null ? List.of() : List.copyOf(uris);
+        patterns = patterns == null ? List.of() : List.copyOf(patterns);
+    }
+
+    public static UriFilter of(List<String> uris) {
+        return new UriFilter(uris, null);
+    }
+
+    public boolean isAll() {
+        return uris.isEmpty() && patterns.isEmpty();
+    }
+
+    public boolean hasPatterns() {
+        return !patterns.isEmpty();
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.statistic.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statistic.config.OnPostgresCondition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class EndpointDictionaryRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final boolean postgres;
+
+    public EndpointDictionaryRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                        @Value("${spring.datasource.url}") String jdbcUrl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgres = OnPostgresCondition.isPostgres(jdbcUrl);
+    }
+
+    // Недостающие значения добавляются отсортированными: параллельные вставки берут блокировки
+    // уникального индекса в одном порядке. Уже известные значения не вставляются, чтобы не тратить id.
+    @Transactional
+    public Map<String, Integer> findOrCreate(Dictionary dictionary, Collection<String> values) {
+        Map<String, Integer> ids = find(dictionary, values);
+        List<String> missing = values.stream()
+                .filter(value -> !ids.containsKey(value))
+                .distinct()
+                .sorted()
+                .toList();
+        if (!missing.isEmpty()) {
+            // H2 не знает ON CONFLICT, там то же делает MERGE ... KEY
+            String sql = postgres
+                    ? "INSERT INTO " + dictionary.table + " (" + dictionary.column + ") VALUES (?)"
+                            + " ON CONFLICT (" + dictionary.column + ") DO NOTHING"
+                    : "MERGE INTO " + dictionary.table + " (" + dictionary.column + ") KEY ("
+                            + dictionary.column + ") VALUES (?)";
+            jdbcTemplate.getJdbcTemplate().batchUpdate(sql, missing, missing.size(),
+                    (ps, value) -> ps.setString(1, value));
+            ids.putAll(find(dictionary, missing));
+        }
+        return ids;
+    }
+
+    private Map<String, Integer> find(Dictionary dictionary, Collection<String> values) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query("SELECT id, " + dictionary.column + " AS value FROM " + dictionary.table
+                        + " WHERE " + dictionary.column + " IN (:values)",
+                new MapSqlParameterSource("values", values),
+                rs -> {
+                    ids.put(rs.getString("value"), rs.getInt("id"));
+                });
+        return ids;
+    }
+
+    public enum Dictionary {
+        APP("endpoint_apps", "name"),
+        URI("endpoint_uris", "uri");
+
+        private final String table;
+        private final String column;
+
+        Dictionary(String table, String column) {
+            this.table = table;
+            this.column = column;
+        }
+    }
+}
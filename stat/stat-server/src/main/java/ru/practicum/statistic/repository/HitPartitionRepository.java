@@ -0,0 +1,177 @@
+package ru.practicum.statistic.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnPostgres
+public class HitPartitionRepository {
+
+    public static final String DEFAULT_PARTITION = "endpoint_hits_default";
+
+    private static final long MAINTENANCE_LOCK_KEY = 0x656e64706f696e74L;
+    private static final String LEGACY_TABLE = "endpoint_hits_legacy";
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+    // SQL-версия IpAddresses.parse для переноса строковых IP: литералы IPv4/IPv6 как есть,
+    // остальное — в 100::/64 с младшими 64 битами из md5 строки
+    private static final String IP_TO_INET_FUNCTION = """
+            CREATE OR REPLACE FUNCTION endpoint_hits_ip_to_inet(value TEXT) RETURNS INET
+            LANGUAGE plpgsql IMMUTABLE AS $$
+            BEGIN
+                IF value ~ '^((25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])\\.){3}(25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])$'
+                        OR value ~ '^[0-9A-Fa-f:.]*:[0-9A-Fa-f:.]*$' THEN
+                    BEGIN
+                        RETURN value::inet;
+                    EXCEPTION WHEN invalid_text_representation THEN
+                        NULL;
+                    END;
+                END IF;
+                RETURN ('100::' || regexp_replace(substr(md5(value), 1, 16), '(.{4})(?!$)', '\\1:', 'g'))::inet;
+            END;
+            $$
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Сериализует обслуживание партиций между несколькими экземплярами stat-server
+    public void lockMaintenance() {
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", rs -> null, MAINTENANCE_LOCK_KEY);
+    }
+
+    // 'p' — секционированная таблица, 'r' — обычная (созданная до секционирования), пусто — таблицы ещё нет
+    public Optional<String> findHitsTableKind() {
+        return jdbcTemplate.query("SELECT relkind::text FROM pg_class WHERE oid = to_regclass('endpoint_hits')",
+                (rs, rowNum) -> rs.getString(1)).stream().findFirst();
+    }
+
+    // У секционированной таблицы в сторону уходят и партиции с именованными индексами,
+    // иначе новая таблица не сможет занять те же имена
+    public void renameHitsTableToLegacy() {
+        for (Partition partition : findPartitions()) {
+            jdbcTemplate.execute("ALTER TABLE " + partition.name() + " RENAME TO " + partition.name() + "_legacy");
+        }
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS pk_endpoint_hits RENAME TO pk_endpoint_hits_legacy");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS endpoint_hits_timestamp_idx"
+                + " RENAME TO endpoint_hits_legacy_timestamp_idx");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS endpoint_hits_uri_timestamp_idx"
+                + " RENAME TO endpoint_hits_legacy_uri_timestamp_idx");
+        jdbcTemplate.execute("ALTER TABLE endpoint_hits RENAME TO " + LEGACY_TABLE);
+    }
+
+    // false — таблица со строковыми app, uri и ip, созданная до словарного кодирования
+    public boolean isHitsTableEncoded() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM pg_attribute
+                               WHERE attrelid = 'endpoint_hits'::regclass AND attname = 'app_id' AND NOT attisdropped)
+                """, Boolean.class));
+    }
+
+    public void createPartitionedHitsTable() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS endpoint_hits_seq");
+        jdbcTemplate.execute("""
+                CREATE TABLE endpoint_hits (
+                    id BIGINT NOT NULL DEFAULT nextval('endpoint_hits_seq'),
+                    app_id SMALLINT NOT NULL,
+                    uri_id INTEGER NOT NULL,
+                    ip INET NOT NULL,
+                    hit_timestamp TIMESTAMP NOT NULL,
+                    CONSTRAINT pk_endpoint_hits PRIMARY KEY (id, hit_timestamp)
+                ) PARTITION BY RANGE (hit_timestamp)
+                """);
+        jdbcTemplate.execute("ALTER SEQUENCE endpoint_hits_seq OWNED BY endpoint_hits.id");
+        jdbcTemplate.execute("CREATE INDEX endpoint_hits_timestamp_idx ON endpoint_hits (hit_timestamp)");
+        jdbcTemplate.execute("CREATE INDEX endpoint_hits_uri_timestamp_idx ON endpoint_hits (uri_id, hit_timestamp)");
+        jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF endpoint_hits DEFAULT");
+    }
+
+    public Optional<LocalDateTime> findLegacyMinTimestamp() {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(
+                "SELECT MIN(hit_timestamp) FROM " + LEGACY_TABLE, LocalDateTime.class));
+    }
+
+    // Переносит хиты не старше from (все, если from == null) в секционированную таблицу, сохраняя их id:
+    // app и uri заменяются id словарей, ip переводится в inet
+    public int copyLegacyHits(LocalDateTime from) {
+        jdbcTemplate.update("INSERT INTO endpoint_apps (name) SELECT DISTINCT app FROM " + LEGACY_TABLE
+                + " ORDER BY 1 ON CONFLICT (name) DO NOTHING");
+        jdbcTemplate.update("INSERT INTO endpoint_uris (uri) SELECT DISTINCT uri FROM " + LEGACY_TABLE
+                + " ORDER BY 1 ON CONFLICT (uri) DO NOTHING");
+        jdbcTemplate.execute(IP_TO_INET_FUNCTION);
+
+        String copySql = "INSERT INTO endpoint_hits (id, app_id, uri_id, ip, hit_timestamp)"
+                + " SELECT l.id, a.id, u.id, endpoint_hits_ip_to_inet(l.ip), l.hit_timestamp"
+                + " FROM " + LEGACY_TABLE + " l"
+                + " JOIN endpoint_apps a ON a.name = l.app"
+                + " JOIN endpoint_uris u ON u.uri = l.uri";
+        int rows = from == null
+                ? jdbcTemplate.update(copySql)
+                : jdbcTemplate.update(copySql + " WHERE l.hit_timestamp >= ?", Timestamp.valueOf(from));
+        jdbcTemplate.execute("DROP FUNCTION endpoint_hits_ip_to_inet(TEXT)");
+        jdbcTemplate.query("SELECT setval('endpoint_hits_seq', GREATEST((SELECT MAX(id) FROM " + LEGACY_TABLE
+                + "), 1))", rs -> null);
+        return rows;
+    }
+
+    public void dropLegacyHits() {
+        jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+    }
+
+    public boolean partitionExists(String name) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL",
+                Boolean.class, name));
+    }
+
+    // Новая партиция собирается отдельно и подключается через ATTACH: строки её диапазона,
+    // уже попавшие в DEFAULT-партицию, переносятся в неё, иначе ATTACH был бы невозможен
+    public void createPartition(String name, LocalDateTime from, LocalDateTime to) {
+        Timestamp lower = Timestamp.valueOf(from);
+        Timestamp upper = Timestamp.valueOf(to);
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE endpoint_hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM " + DEFAULT_PARTITION
+                + " WHERE hit_timestamp >= ? AND hit_timestamp < ?", lower, upper);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION
+                + " WHERE hit_timestamp >= ? AND hit_timestamp < ?", lower, upper);
+        jdbcTemplate.execute("ALTER TABLE endpoint_hits ATTACH PARTITION " + name
+                + " FOR VALUES FROM ('" + BOUND_FORMAT.format(from) + "') TO ('" + BOUND_FORMAT.format(to) + "')");
+    }
+
+    public List<Partition> findPartitions() {
+        return jdbcTemplate.query("""
+                SELECT c.relname, pg_get_expr(c.relpartbound, c.oid)
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'endpoint_hits'::regclass
+                """, (rs, rowNum) -> new Partition(rs.getString(1), parseUpperBound(rs.getString(2))));
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("DROP TABLE " + name);
+    }
+
+    public int deleteDefaultPartitionHitsBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE hit_timestamp < ?",
+                Timestamp.valueOf(cutoff));
+    }
+
+    private static LocalDateTime parseUpperBound(String bound) {
+        Matcher matcher = UPPER_BOUND.matcher(bound);
+        return matcher.find() ? LocalDateTime.parse(matcher.group(1), BOUND_FORMAT) : null;
+    }
+
+    // upperBound == null у DEFAULT-партиции
+    public record Partition(String name, LocalDateTime upperBound) {
+    }
+}
@@ -0,0 +1,148 @@
+package ru.practicum.statistic.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+import ru.practicum.statistic.dto.ViewStats;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.Granularity;
+import ru.practicum.statistic.model.UriFilter;
+import ru.practicum.statistic.service.EndpointDictionary;
+import ru.practicum.statistic.service.StatsRangePlanner.Segment;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnPostgres
+public class HitRollupRepository {
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO %1$s AS r (app_id, uri_id, bucket, hits)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (uri_id, bucket, app_id) DO UPDATE SET hits = r.hits + EXCLUDED.hits
+            """;
+
+    private static final String BACKFILL_SQL = """
+            INSERT INTO %1$s (app_id, uri_id, bucket, hits)
+            SELECT app_id, uri_id, date_trunc('%2$s', hit_timestamp), COUNT(*)
+            FROM endpoint_hits
+            GROUP BY app_id, uri_id, date_trunc('%2$s', hit_timestamp)
+            """;
+
+    // Ключи сортируются, чтобы параллельные транзакции брали блокировки строк в одном порядке
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparingInt(RollupKey::uriId)
+            .thenComparing(RollupKey::bucket)
+            .thenComparingInt(RollupKey::appId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void increment(List<EndpointHit> hits, EndpointDictionary.Ids ids) {
+        for (Granularity granularity : Granularity.values()) {
+            Map<RollupKey, Long> counts = new TreeMap<>(KEY_ORDER);
+            for (EndpointHit hit : hits) {
+                RollupKey key = new RollupKey(ids.appIds().get(hit.getApp()), ids.uriIds().get(hit.getUri()),
+                        granularity.floor(hit.getTimestamp()));
+                counts.merge(key, 1L, Long::sum);
+            }
+            jdbcTemplate.getJdbcTemplate().batchUpdate(UPSERT_SQL.formatted(granularity.getTable()),
+                    new ArrayList<>(counts.entrySet()), counts.size(), (ps, entry) -> {
+                        ps.setShort(1, (short) entry.getKey().appId());
+                        ps.setInt(2, entry.getKey().uriId());
+                        ps.setTimestamp(3, Timestamp.valueOf(entry.getKey().bucket()));
+                        ps.setLong(4, entry.getValue());
+                    });
+        }
+    }
+
+    public List<ViewStats> findStats(List<Segment> segments, UriFilter uris) {
+        List<ViewStats> stats = new ArrayList<>();
+        streamStats(segments, uris, null, stats::add);
+        return stats;
+    }
+
+    // Строки отдаются по мере чтения курсора (spring.jdbc.template.fetch-size), limit сортирует top-N в БД.
+    // Хиты и агрегаты группируются по id словарей, имена подставляются уже к готовым счётчикам
+    public void streamStats(List<Segment> segments, UriFilter uris, Integer limit, Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriIdFilter = uris.isAll() ? "" : " AND " + UriFilterSql.uriIdCondition("uri_id", uris, params);
+
+        List<String> parts = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(segment.from()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.to()));
+            String upperBound = segment.inclusiveEnd() ? " <= :to" : " < :to";
+            if (segment.isRaw()) {
+                parts.add("SELECT app_id, uri_id, COUNT(*) AS hits FROM endpoint_hits"
+                        + " WHERE hit_timestamp >= :from" + i + " AND hit_timestamp" + upperBound + i
+                        + uriIdFilter + " GROUP BY app_id, uri_id");
+            } else {
+                parts.add("SELECT app_id, uri_id, hits FROM " + segment.granularity().getTable()
+                        + " WHERE bucket >= :from" + i + " AND bucket" + upperBound + i
+                        + uriIdFilter);
+            }
+        }
+
+        String counts = "SELECT p.app_id, p.uri_id, SUM(p.hits) AS hits FROM ("
+                + String.join(" UNION ALL ", parts)
+                + ") p GROUP BY p.app_id, p.uri_id ORDER BY hits DESC";
+        if (limit != null) {
+            counts += " LIMIT :limit";
+            params.addValue("limit", limit);
+        }
+        String sql = "SELECT a.name AS app, u.uri AS uri, s.hits AS hits FROM (" + counts + ") s"
+                + " JOIN endpoint_apps a ON a.id = s.app_id"
+                + " JOIN endpoint_uris u ON u.id = s.uri_id"
+                + " ORDER BY s.hits DESC";
+
+        jdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+        });
+    }
+
+    // Таблицы агрегатов, созданные со строковыми app и uri, переводятся на id словарей
+    @Transactional
+    public void encodeLegacyTables() {
+        for (Granularity granularity : Granularity.values()) {
+            RollupEncoding.encodeIfLegacy(jdbcTemplate.getJdbcTemplate(), granularity.getTable(),
+                    "uri_id, bucket, app_id");
+        }
+    }
+
+    // Первичное заполнение агрегатов по уже накопленным хитам: выполняется один раз,
+    // пока таблицы агрегатов пусты. Блокировка не даёт параллельной записи посчитать хит дважды.
+    @Transactional
+    public void backfillIfEmpty() {
+        jdbcTemplate.getJdbcTemplate().execute("LOCK TABLE "
+                + Arrays.stream(Granularity.values()).map(Granularity::getTable).collect(Collectors.joining(", "))
+                + " IN EXCLUSIVE MODE");
+        Boolean rollupsEmpty = jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM " + Granularity.DAY.getTable() + ")", Boolean.class);
+        if (!Boolean.TRUE.equals(rollupsEmpty)) {
+            return;
+        }
+        for (Granularity granularity : Granularity.values()) {
+            int rows = jdbcTemplate.getJdbcTemplate()
+                    .update(BACKFILL_SQL.formatted(granularity.getTable(), granularity.getTruncUnit()));
+            log.info("Агрегаты {} заполнены по сырым хитам: {} строк", granularity, rows);
+        }
+    }
+
+    private record RollupKey(int appId, int uriId, LocalDateTime bucket) {
+    }
+}
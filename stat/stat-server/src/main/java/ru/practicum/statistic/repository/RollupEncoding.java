@@ -0,0 +1,37 @@
+package ru.practicum.statistic.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Перевод таблиц агрегатов и скетчей, созданных со строковыми app и uri, на id словарей.
+// Таблица меняется на месте, поэтому агрегаты за периоды, сырые хиты которых уже удалены, сохраняются
+@Slf4j
+final class RollupEncoding {
+
+    private RollupEncoding() {
+    }
+
+    // Вызывается в транзакции; keyColumns — первичный ключ после перевода
+    static void encodeIfLegacy(JdbcTemplate jdbcTemplate, String table, String keyColumns) {
+        jdbcTemplate.execute("LOCK TABLE " + table + " IN ACCESS EXCLUSIVE MODE");
+        Boolean legacy = jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM pg_attribute
+                               WHERE attrelid = ?::regclass AND attname = 'app' AND NOT attisdropped)
+                """, Boolean.class, table);
+        if (!Boolean.TRUE.equals(legacy)) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO endpoint_apps (name) SELECT DISTINCT app FROM " + table
+                + " ORDER BY 1 ON CONFLICT (name) DO NOTHING");
+        jdbcTemplate.update("INSERT INTO endpoint_uris (uri) SELECT DISTINCT uri FROM " + table
+                + " ORDER BY 1 ON CONFLICT (uri) DO NOTHING");
+        jdbcTemplate.execute("ALTER TABLE " + table + " ADD COLUMN app_id SMALLINT, ADD COLUMN uri_id INTEGER");
+        int rows = jdbcTemplate.update("UPDATE " + table + " t SET app_id = a.id, uri_id = u.id"
+                + " FROM endpoint_apps a, endpoint_uris u WHERE a.name = t.app AND u.uri = t.uri");
+        jdbcTemplate.execute("ALTER TABLE " + table
+                + " DROP CONSTRAINT pk_" + table + ", DROP COLUMN app, DROP COLUMN uri,"
+                + " ALTER COLUMN app_id SET NOT NULL, ALTER COLUMN uri_id SET NOT NULL,"
+                + " ADD CONSTRAINT pk_" + table + " PRIMARY KEY (" + keyColumns + ")");
+        log.info("{} переведена на id словарей: {} строк", table, rows);
+    }
+}
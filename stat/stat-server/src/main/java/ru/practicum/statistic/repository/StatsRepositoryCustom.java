@@ -0,0 +1,20 @@
+package ru.practicum.statistic.repository;
+
+import ru.practicum.statistic.dto.ViewStats;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.UriFilter;
+import ru.practicum.statistic.service.EndpointDictionary;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface StatsRepositoryCustom {
+
+    void insertAll(List<EndpointHit> hits, EndpointDictionary.Ids ids);
+
+    List<LocalDateTime> findHitMinutesFrom(LocalDateTime from);
+
+    void streamExactStats(LocalDateTime start, LocalDateTime end, UriFilter uris, boolean unique,
+                          Integer limit, Consumer<ViewStats> consumer);
+}
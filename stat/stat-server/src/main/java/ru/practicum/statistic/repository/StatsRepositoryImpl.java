@@ -0,0 +1,98 @@
+package ru.practicum.statistic.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.statistic.config.OnPostgresCondition;
+import ru.practicum.statistic.dto.ViewStats;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.UriFilter;
+import ru.practicum.statistic.service.EndpointDictionary;
+import ru.practicum.statistic.service.IpAddresses;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class StatsRepositoryImpl implements StatsRepositoryCustom {
+
+    private static final String INSERT_HIT_SQL = """
+            INSERT INTO endpoint_hits (app_id, uri_id, ip, hit_timestamp)
+            VALUES (?, ?, ?::inet, ?)
+            """;
+
+    private static final String HIT_MINUTES_SQL = """
+            SELECT DISTINCT date_trunc('minute', hit_timestamp)
+            FROM endpoint_hits
+            WHERE hit_timestamp >= ?
+            """;
+
+    // Точный подсчёт по сырым хитам: группировка по id словарей, имена подставляются к готовым счётчикам
+    private static final String EXACT_STATS_SQL = """
+            SELECT a.name AS app, u.uri AS uri, s.hits AS hits
+            FROM (
+                SELECT eh.app_id, eh.uri_id, %s AS hits
+                FROM endpoint_hits eh
+                WHERE eh.hit_timestamp >= :start AND eh.hit_timestamp <= :end%s
+                GROUP BY eh.app_id, eh.uri_id
+            ) s
+            JOIN endpoint_apps a ON a.id = s.app_id
+            JOIN endpoint_uris u ON u.id = s.uri_id
+            ORDER BY hits DESC
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final int batchSize;
+    private final boolean postgres;
+
+    public StatsRepositoryImpl(JdbcTemplate jdbcTemplate,
+                               NamedParameterJdbcTemplate namedJdbcTemplate,
+                               @Value("${stat.hits.batch-size:500}") int batchSize,
+                               @Value("${spring.datasource.url}") String jdbcUrl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.batchSize = batchSize;
+        this.postgres = OnPostgresCondition.isPostgres(jdbcUrl);
+    }
+
+    // Вставка идёт мимо Hibernate: с IDENTITY-ключом он не умеет батчить INSERT,
+    // а здесь драйвер получает настоящий JDBC batch (с reWriteBatchedInserts — multi-row INSERT)
+    @Override
+    public void insertAll(List<EndpointHit> hits, EndpointDictionary.Ids ids) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_HIT_SQL, hits, batchSize, (ps, hit) -> {
+            ps.setShort(1, ids.appIds().get(hit.getApp()).shortValue());
+            ps.setInt(2, ids.uriIds().get(hit.getUri()));
+            ps.setString(3, IpAddresses.toInetText(hit.getIp()));
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+
+    @Override
+    public List<LocalDateTime> findHitMinutesFrom(LocalDateTime from) {
+        return jdbcTemplate.queryForList(HIT_MINUTES_SQL, LocalDateTime.class, Timestamp.valueOf(from));
+    }
+
+    @Override
+    public void streamExactStats(LocalDateTime start, LocalDateTime end, UriFilter uris, boolean unique,
+                                 Integer limit, Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String uriFilter = uris.isAll() ? "" : " AND " + UriFilterSql.uriIdCondition("eh.uri_id", uris, params, postgres);
+        String sql = EXACT_STATS_SQL.formatted(unique ? "COUNT(DISTINCT eh.ip)" : "COUNT(*)", uriFilter);
+        if (limit != null) {
+            sql += " LIMIT :limit";
+            params.addValue("limit", limit);
+        }
+
+        namedJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.statistic.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.practicum.statistic.model.UriFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Условие по uri через словарь endpoint_uris. Точные uri передаются одним параметром-массивом,
+// шаблон — диапазоном по индексу idx_endpoint_uris_uri_c от его префикса до первой звёздочки,
+// а остаток шаблона проверяется LIKE только на строках этого диапазона.
+// На H2 нет COLLATE "C", и шаблон проверяется одним LIKE.
+final class UriFilterSql {
+
+    private UriFilterSql() {
+    }
+
+    // column IN (SELECT id ...) для uri_id хитов, агрегатов и скетчей
+    static String uriIdCondition(String column, UriFilter filter, MapSqlParameterSource params) {
+        return uriIdCondition(column, filter, params, true);
+    }
+
+    static String uriIdCondition(String column, UriFilter filter, MapSqlParameterSource params, boolean postgres) {
+        return column + " IN (SELECT id FROM endpoint_uris WHERE " + selector(filter, params, postgres) + ")";
+    }
+
+    private static String selector(UriFilter filter, MapSqlParameterSource params, boolean postgres) {
+        List<String> conditions = new ArrayList<>();
+        if (!filter.uris().isEmpty()) {
+            params.addValue("uriList", filter.uris().toArray(String[]::new));
+            conditions.add("uri = ANY(:uriList)");
+        }
+        for (int i = 0; i < filter.patterns().size(); i++) {
+            conditions.add(patternCondition(filter.patterns().get(i), i, params, postgres));
+        }
+        return "(" + String.join(" OR ", conditions) + ")";
+    }
+
+    private static String patternCondition(String pattern, int index, MapSqlParameterSource params,
+                                           boolean postgres) {
+        int star = pattern.indexOf('*');
+        if (star < 0) {
+            params.addValue("uriPattern" + index, pattern);
+            return "uri = :uriPattern" + index;
+        }
+        if (!postgres) {
+            params.addValue("uriPattern" + index, toLike(pattern));
+            return "uri LIKE :uriPattern" + index;
+        }
+        String prefix = pattern.substring(0, star);
+        List<String> conditions = new ArrayList<>();
+        if (!prefix.isEmpty()) {
+            params.addValue("uriPatternFrom" + index, prefix);
+            params.addValue("uriPatternTo" + index, nextPrefix(prefix));
+            conditions.add("uri COLLATE \"C\" >= :uriPatternFrom" + index
+                    + " AND uri COLLATE \"C\" < :uriPatternTo" + index);
+        }
+        if (star < pattern.length() - 1) {
+            params.addValue("uriPattern" + index, toLike(pattern));
+            conditions.add("uri LIKE :uriPattern" + index);
+        }
+        return conditions.isEmpty() ? "TRUE" : "(" + String.join(" AND ", conditions) + ")";
+    }
+
+    // Наименьшая строка больше всех строк с этим префиксом в порядке COLLATE "C" (порядок кодовых точек)
+    private static String nextPrefix(String prefix) {
+        int last = prefix.codePointBefore(prefix.length());
+        return prefix.substring(0, prefix.length() - Character.charCount(last))
+                + new String(Character.toChars(last + 1));
+    }
+
+    private static String toLike(String pattern) {
+        StringBuilder like = new StringBuilder(pattern.length());
+        for (char c : pattern.toCharArray()) {
+            switch (c) {
+                case '*' -> like.append('%');
+                case '%', '_', '\\' -> like.append('\\').append(c);
+                default -> like.append(c);
+            }
+        }
+        return like.toString();
+    }
+}
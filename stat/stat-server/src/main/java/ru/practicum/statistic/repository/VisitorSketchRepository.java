@@ -0,0 +1,215 @@
+package ru.practicum.statistic.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+import ru.practicum.statistic.dto.ViewStats;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.Granularity;
+import ru.practicum.statistic.model.StatKey;
+import ru.practicum.statistic.model.UriFilter;
+import ru.practicum.statistic.service.EndpointDictionary;
+import ru.practicum.statistic.service.HyperLogLog;
+import ru.practicum.statistic.service.StatsRangePlanner.Segment;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Скетчи HyperLogLog хранятся построчно: (app_id, uri_id, bucket, reg) -> максимальный rank.
+// Такие скетчи сливаются прямо в SQL через MAX(rank), а на один бакет приходится не больше 2^p строк.
+@Slf4j
+@Repository
+@ConditionalOnPostgres
+public class VisitorSketchRepository {
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO %1$s AS v (app_id, uri_id, bucket, reg, rank)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (uri_id, bucket, app_id, reg) DO UPDATE SET rank = EXCLUDED.rank
+            WHERE v.rank < EXCLUDED.rank
+            """;
+
+    private static final String BACKFILL_SQL = """
+            INSERT INTO %1$s (app_id, uri_id, bucket, reg, rank)
+            SELECT app_id, uri_id, date_trunc('%2$s', hit_timestamp), %3$s, MAX(%4$s)
+            FROM (%5$s) hashed
+            GROUP BY app_id, uri_id, date_trunc('%2$s', hit_timestamp), %3$s
+            """;
+
+    private static final String NAMES_JOIN = " JOIN endpoint_apps a ON a.id = s.app_id"
+            + " JOIN endpoint_uris u ON u.id = s.uri_id";
+
+    private static final Comparator<RegisterKey> KEY_ORDER = Comparator.comparingInt(RegisterKey::uriId)
+            .thenComparing(RegisterKey::bucket)
+            .thenComparingInt(RegisterKey::appId)
+            .thenComparingInt(RegisterKey::reg);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HyperLogLog hyperLogLog;
+    private final String registerExpression;
+    private final String rankExpression;
+    private final String estimateExpression;
+
+    public VisitorSketchRepository(NamedParameterJdbcTemplate jdbcTemplate, HyperLogLog hyperLogLog) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hyperLogLog = hyperLogLog;
+
+        // Те же регистр и rank, что считает HyperLogLog в Java, но над колонкой h = первые 8 байт md5(inet_send(ip))
+        int precision = hyperLogLog.getPrecision();
+        int registers = hyperLogLog.getRegisterCount();
+        this.registerExpression = "((h >> %d) & %d)".formatted(64 - precision, registers - 1);
+        this.rankExpression = "COALESCE(NULLIF(position('1' IN (h << %d)::bit(64)::text), 0), %d)"
+                .formatted(precision, 65 - precision);
+
+        // Оценка HyperLogLog с поправкой linear counting для малых мощностей
+        String zeros = "(%d - COUNT(*))".formatted(registers);
+        String raw = "(%s * %d * %d / (SUM(power(2.0, -rank)) + %s))"
+                .formatted(hyperLogLog.alpha(), registers, registers, zeros);
+        this.estimateExpression = ("ROUND(CASE WHEN %2$s > 0 AND %3$s <= %4$s"
+                + " THEN %1$d * ln(%1$d::numeric / %2$s) ELSE %3$s END)")
+                .formatted(registers, zeros, raw, 2.5 * registers);
+    }
+
+    public void merge(List<EndpointHit> hits, EndpointDictionary.Ids ids) {
+        for (Granularity granularity : Granularity.values()) {
+            if (granularity.getVisitorTable() == null) {
+                continue;
+            }
+            Map<RegisterKey, Integer> ranks = new TreeMap<>(KEY_ORDER);
+            for (EndpointHit hit : hits) {
+                long hash = HyperLogLog.hash(hit.getIp());
+                RegisterKey key = new RegisterKey(ids.appIds().get(hit.getApp()), ids.uriIds().get(hit.getUri()),
+                        granularity.floor(hit.getTimestamp()), hyperLogLog.registerIndex(hash));
+                ranks.merge(key, hyperLogLog.rank(hash), Math::max);
+            }
+            jdbcTemplate.getJdbcTemplate().batchUpdate(UPSERT_SQL.formatted(granularity.getVisitorTable()),
+                    new ArrayList<>(ranks.entrySet()), ranks.size(), (ps, entry) -> {
+                        ps.setShort(1, (short) entry.getKey().appId());
+                        ps.setInt(2, entry.getKey().uriId());
+                        ps.setTimestamp(3, Timestamp.valueOf(entry.getKey().bucket()));
+                        ps.setInt(4, entry.getKey().reg());
+                        ps.setInt(5, entry.getValue());
+                    });
+        }
+    }
+
+    public void streamUniqueStats(List<Segment> segments, UriFilter uris, Integer limit,
+                                  Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String estimates = "SELECT r.app_id, r.uri_id, " + estimateExpression + " AS hits FROM ("
+                + registersSql(segments, uris, params)
+                + ") r GROUP BY r.app_id, r.uri_id ORDER BY hits DESC";
+        if (limit != null) {
+            estimates += " LIMIT :limit";
+            params.addValue("limit", limit);
+        }
+        String sql = "SELECT a.name AS app, u.uri AS uri, s.hits AS hits FROM (" + estimates + ") s"
+                + NAMES_JOIN + " ORDER BY s.hits DESC";
+
+        jdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+        });
+    }
+
+    // Слитые регистры без оценки: их домешивает в Java HotWindowCounters
+    public Map<StatKey, byte[]> findRegisters(List<Segment> segments, UriFilter uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        Map<StatKey, byte[]> registers = new HashMap<>();
+        String sql = "SELECT a.name AS app, u.uri AS uri, s.reg AS reg, s.rank AS rank FROM ("
+                + registersSql(segments, uris, params) + ") s" + NAMES_JOIN;
+        jdbcTemplate.query(sql, params, rs -> {
+            byte[] sketch = registers.computeIfAbsent(new StatKey(rs.getString("app"), rs.getString("uri")),
+                    key -> new byte[hyperLogLog.getRegisterCount()]);
+            sketch[rs.getInt("reg")] = (byte) rs.getInt("rank");
+        });
+        return registers;
+    }
+
+    // Регистры сливаются по id словарей, имена подставляются уже к результату
+    private String registersSql(List<Segment> segments, UriFilter uris, MapSqlParameterSource params) {
+        String uriFilter = uris.isAll() ? "" : " AND " + UriFilterSql.uriIdCondition("uri_id", uris, params);
+        String uriIdFilter = uris.isAll() ? "" : " AND " + UriFilterSql.uriIdCondition("e.uri_id", uris, params);
+
+        List<String> parts = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(segment.from()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.to()));
+            String upperBound = segment.inclusiveEnd() ? " <= :to" : " < :to";
+            if (segment.isRaw()) {
+                parts.add("SELECT app_id, uri_id, " + registerExpression + " AS reg, " + rankExpression + " AS rank"
+                        + " FROM (" + hashedHitsSql("hit_timestamp >= :from" + i
+                        + " AND hit_timestamp" + upperBound + i + uriIdFilter) + ") hashed" + i);
+            } else {
+                parts.add("SELECT app_id, uri_id, reg, rank FROM " + segment.granularity().getVisitorTable()
+                        + " WHERE bucket >= :from" + i + " AND bucket" + upperBound + i
+                        + uriFilter);
+            }
+        }
+
+        return "SELECT p.app_id, p.uri_id, p.reg, MAX(p.rank) AS rank FROM ("
+                + String.join(" UNION ALL ", parts)
+                + ") p GROUP BY p.app_id, p.uri_id, p.reg";
+    }
+
+    // Скетчи, посчитанные другой хеш-функцией, несовместимы: после очистки их заново заполнит backfillIfEmpty
+    public void clear() {
+        jdbcTemplate.getJdbcTemplate().execute("TRUNCATE " + Arrays.stream(Granularity.values())
+                .map(Granularity::getVisitorTable)
+                .filter(Objects::nonNull)
+                .collect(Collectors.joining(", ")));
+    }
+
+    @Transactional
+    public void encodeLegacyTables() {
+        for (Granularity granularity : Granularity.values()) {
+            if (granularity.getVisitorTable() != null) {
+                RollupEncoding.encodeIfLegacy(jdbcTemplate.getJdbcTemplate(), granularity.getVisitorTable(),
+                        "uri_id, bucket, app_id, reg");
+            }
+        }
+    }
+
+    @Transactional
+    public void backfillIfEmpty() {
+        List<Granularity> sketched = Arrays.stream(Granularity.values())
+                .filter(granularity -> granularity.getVisitorTable() != null)
+                .toList();
+        jdbcTemplate.getJdbcTemplate().execute("LOCK TABLE "
+                + sketched.stream().map(Granularity::getVisitorTable).collect(Collectors.joining(", "))
+                + " IN EXCLUSIVE MODE");
+        Boolean sketchesEmpty = jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM " + Granularity.DAY.getVisitorTable() + ")", Boolean.class);
+        if (!Boolean.TRUE.equals(sketchesEmpty)) {
+            return;
+        }
+        for (Granularity granularity : sketched) {
+            int rows = jdbcTemplate.getJdbcTemplate().update(BACKFILL_SQL.formatted(granularity.getVisitorTable(),
+                    granularity.getTruncUnit(), registerExpression, rankExpression, hashedHitsSql("TRUE")));
+            log.info("Скетчи посетителей {} заполнены по сырым хитам: {} строк", granularity, rows);
+        }
+    }
+
+    private static String hashedHitsSql(String condition) {
+        return "SELECT e.app_id AS app_id, e.uri_id AS uri_id, e.hit_timestamp AS hit_timestamp,"
+                + " ('x' || substr(md5(inet_send(e.ip)), 1, 16))::bit(64)::bigint AS h"
+                + " FROM endpoint_hits e"
+                + " WHERE " + condition;
+    }
+
+    private record RegisterKey(int appId, int uriId, LocalDateTime bucket, int reg) {
+    }
+}
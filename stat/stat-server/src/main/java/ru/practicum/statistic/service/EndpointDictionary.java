@@ -0,0 +1,57 @@
+package ru.practicum.statistic.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.repository.EndpointDictionaryRepository;
+import ru.practicum.statistic.repository.EndpointDictionaryRepository.Dictionary;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Кэш id словарей app и uri. Записи словарей никогда не удаляются и не меняют id,
+// поэтому кэш не нужно инвалидировать, в том числе при нескольких экземплярах stat-server.
+@Component
+@RequiredArgsConstructor
+public class EndpointDictionary {
+
+    private final EndpointDictionaryRepository dictionaryRepository;
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+
+    // Вызывается до транзакции записи хитов: новые id фиксируются своей транзакцией,
+    // и откат записи хитов не оставит в кэше id, которых нет в БД
+    public Ids resolve(List<EndpointHit> hits) {
+        return new Ids(resolve(Dictionary.APP, appIds, hits, EndpointHit::getApp),
+                resolve(Dictionary.URI, uriIds, hits, EndpointHit::getUri));
+    }
+
+    private Map<String, Integer> resolve(Dictionary dictionary, Map<String, Integer> cache,
+                                         List<EndpointHit> hits, Function<EndpointHit, String> value) {
+        Map<String, Integer> ids = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (EndpointHit hit : hits) {
+            String key = value.apply(hit);
+            Integer id = cache.get(key);
+            if (id != null) {
+                ids.put(key, id);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Integer> created = dictionaryRepository.findOrCreate(dictionary, missing);
+            cache.putAll(created);
+            ids.putAll(created);
+        }
+        return ids;
+    }
+
+    public record Ids(Map<String, Integer> appIds, Map<String, Integer> uriIds) {
+    }
+}
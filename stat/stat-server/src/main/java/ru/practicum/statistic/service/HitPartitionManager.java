@@ -0,0 +1,143 @@
+package ru.practicum.statistic.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+import ru.practicum.statistic.repository.HitPartitionRepository;
+import ru.practicum.statistic.repository.HitPartitionRepository.Partition;
+import ru.practicum.statistic.repository.VisitorSketchRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+// Ведёт endpoint_hits как таблицу, секционированную по диапазонам hit_timestamp:
+// заранее создаёт партиции на premake интервалов вперёд и целиком удаляет партиции старше retention
+@Slf4j
+@Component
+@ConditionalOnPostgres
+public class HitPartitionManager {
+
+    private static final int MAX_BACKFILL_PARTITIONS = 120;
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final HitPartitionRepository partitionRepository;
+    private final VisitorSketchRepository visitorSketchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ChronoUnit interval;
+    private final int premake;
+    private final Duration retention;
+
+    public HitPartitionManager(HitPartitionRepository partitionRepository,
+                               VisitorSketchRepository visitorSketchRepository,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${stat.partitions.interval:MONTHS}") ChronoUnit interval,
+                               @Value("${stat.partitions.premake:2}") int premake,
+                               @Value("${stat.partitions.retention:0d}") Duration retention) {
+        if (interval != ChronoUnit.DAYS && interval != ChronoUnit.MONTHS) {
+            throw new IllegalArgumentException("stat.partitions.interval must be DAYS or MONTHS");
+        }
+        this.partitionRepository = partitionRepository;
+        this.visitorSketchRepository = visitorSketchRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.interval = interval;
+        this.premake = premake;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate.executeWithoutResult(status -> {
+            partitionRepository.lockMaintenance();
+            Optional<String> kind = partitionRepository.findHitsTableKind();
+            if (kind.isEmpty()) {
+                partitionRepository.createPartitionedHitsTable();
+                createPartitions(floor(LocalDateTime.now()));
+            } else if (!"p".equals(kind.get()) || !partitionRepository.isHitsTableEncoded()) {
+                migrateLegacyTable();
+            }
+        });
+        maintain();
+    }
+
+    @Scheduled(cron = "${stat.partitions.maintenance-cron:0 15 * * * *}")
+    public void maintain() {
+        transactionTemplate.executeWithoutResult(status -> {
+            partitionRepository.lockMaintenance();
+            createPartitions(floor(LocalDateTime.now()));
+            dropExpiredPartitions();
+        });
+    }
+
+    // Таблица, созданная до секционирования или до словарного кодирования, копируется в новую с сохранением id.
+    // Для её истории заранее создаются партиции, чтобы хиты не осели в DEFAULT-партиции.
+    // Скетчи уникальных посетителей считались хешем строки IP и пересобираются из перенесённых хитов.
+    private void migrateLegacyTable() {
+        partitionRepository.renameHitsTableToLegacy();
+        partitionRepository.createPartitionedHitsTable();
+
+        Optional<LocalDateTime> cutoff = retentionCutoff();
+        LocalDateTime current = floor(LocalDateTime.now());
+        LocalDateTime first = current.minus(MAX_BACKFILL_PARTITIONS, interval);
+        Optional<LocalDateTime> oldest = partitionRepository.findLegacyMinTimestamp();
+        if (cutoff.isPresent() && oldest.isPresent() && oldest.get().isBefore(cutoff.get())) {
+            oldest = cutoff;
+        }
+        if (oldest.isPresent() && oldest.get().isAfter(first)) {
+            first = floor(oldest.get());
+        }
+        createPartitions(first);
+
+        int copied = partitionRepository.copyLegacyHits(cutoff.orElse(null));
+        partitionRepository.dropLegacyHits();
+        visitorSketchRepository.clear();
+        log.info("endpoint_hits переведена на секционирование, перенесено {} хитов", copied);
+    }
+
+    private void createPartitions(LocalDateTime from) {
+        LocalDateTime last = floor(LocalDateTime.now()).plus(premake, interval);
+        for (LocalDateTime lower = from; !lower.isAfter(last); lower = lower.plus(1, interval)) {
+            String name = "endpoint_hits_p" + NAME_FORMAT.format(lower);
+            if (!partitionRepository.partitionExists(name)) {
+                partitionRepository.createPartition(name, lower, lower.plus(1, interval));
+                log.info("Создана партиция {}", name);
+            }
+        }
+    }
+
+    private void dropExpiredPartitions() {
+        Optional<LocalDateTime> cutoff = retentionCutoff();
+        if (cutoff.isEmpty()) {
+            return;
+        }
+        for (Partition partition : partitionRepository.findPartitions()) {
+            if (partition.upperBound() != null && !partition.upperBound().isAfter(cutoff.get())) {
+                partitionRepository.dropPartition(partition.name());
+                log.info("Удалена партиция {} старше {}", partition.name(), cutoff.get());
+            }
+        }
+        int deleted = partitionRepository.deleteDefaultPartitionHitsBefore(cutoff.get());
+        if (deleted > 0) {
+            log.info("Из {} удалено {} хитов старше {}", HitPartitionRepository.DEFAULT_PARTITION, deleted,
+                    cutoff.get());
+        }
+    }
+
+    private Optional<LocalDateTime> retentionCutoff() {
+        if (retention.isZero()) {
+            return Optional.empty();
+        }
+        return Optional.of(LocalDateTime.now().minus(retention));
+    }
+
+    private LocalDateTime floor(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return interval == ChronoUnit.MONTHS ? day.withDayOfMonth(1) : day;
+    }
+}
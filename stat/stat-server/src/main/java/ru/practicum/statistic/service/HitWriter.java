@@ -0,0 +1,50 @@
+package ru.practicum.statistic.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.repository.HitRollupRepository;
+import ru.practicum.statistic.repository.StatsRepository;
+import ru.practicum.statistic.repository.VisitorSketchRepository;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+public class HitWriter {
+
+    private final StatsRepository statsRepository;
+    private final ObjectProvider<HitRollupRepository> rollupRepository;
+    private final ObjectProvider<VisitorSketchRepository> visitorSketchRepository;
+    private final ObjectProvider<HotWindowCounters> hotWindowCounters;
+    private final ObjectProvider<StatsResultCache> statsResultCache;
+    private final ObjectProvider<ViewTotals> viewTotals;
+    private final EndpointDictionary endpointDictionary;
+    private final TransactionTemplate transactionTemplate;
+
+    // Сырые хиты, агрегаты и скетчи пишутся в одной транзакции, чтобы /stats не видел расхождений.
+    // id словарей app и uri получаются заранее, вне этой транзакции.
+    public void write(List<EndpointHit> hits) {
+        EndpointDictionary.Ids ids = endpointDictionary.resolve(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            statsRepository.insertAll(hits, ids);
+            rollupRepository.ifAvailable(rollups -> rollups.increment(hits, ids));
+            visitorSketchRepository.ifAvailable(sketches -> sketches.merge(hits, ids));
+
+            // Окно в памяти и кэш результатов узнают только о закоммиченных хитах:
+            // иначе откат оставил бы хиты в счётчиках, а кэш пересчитался бы раньше, чем они станут видны
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    hotWindowCounters.ifAvailable(counters -> counters.record(hits));
+                    statsResultCache.ifAvailable(cache -> cache.onHitsCommitted(hits));
+                    viewTotals.ifAvailable(totals -> totals.apply(hits));
+                }
+            });
+        });
+    }
+}
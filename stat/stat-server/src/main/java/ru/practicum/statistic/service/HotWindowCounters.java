@@ -0,0 +1,361 @@
+package ru.practicum.statistic.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.Granularity;
+import ru.practicum.statistic.model.StatKey;
+import ru.practicum.statistic.repository.StatsRepository;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// Счётчики хитов за последние N часов в памяти: по минутам для hits и по часам (скетчи HyperLogLog)
+// для unique. Пополняются после коммита HitWriter, поэтому видят только хиты, записанные этим узлом
+// с момента старта, и включаются только явно, для единственного экземпляра stat-server.
+// Ключ (app, uri) занимает около 60 КБ, поэтому ключей не больше max-keys: новый ключ сверх лимита в память
+// не попадает, а sweep вытесняет самые давно не получавшие хитов. Uri таких ключей до выхода потерянных хитов
+// из окна считаются по БД (см. untracked)
+@Slf4j
+@Component
+@DependsOn("hitPartitionManager")
+@ConditionalOnProperty(name = "stat.hot-window.enabled", havingValue = "true")
+@ConditionalOnPostgres
+public class HotWindowCounters {
+
+    // Насколько метка хита может опережать часы stat-server, чтобы хит ещё попал в память
+    private static final long FUTURE_TOLERANCE_MINUTES = 5;
+    private static final long RETIRED = -1;
+    private static final VarHandle REGISTERS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final HyperLogLog hyperLogLog;
+    private final long windowMinutes;
+    private final int minuteSlots;
+    private final int hourSlots;
+    private final long coveredFromMinute;
+    private final int maxKeys;
+
+    private final ConcurrentMap<StatKey, Window> windows = new ConcurrentHashMap<>();
+    // Uri, хиты которых не попали в память или были вытеснены, и последняя минута таких хитов
+    private final ConcurrentMap<String, Long> untrackedUris = new ConcurrentHashMap<>();
+    // Если untrackedUris переполнен: до этой минуты включительно неполными считаются все uri
+    private final AtomicLong untrackedAllUntil = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong droppedHits = new AtomicLong();
+    private final Set<String> apps = ConcurrentHashMap.newKeySet();
+    // Минуты, часть хитов которых есть только в БД: записаны до старта или пришли с меткой далеко в будущем
+    private final ConcurrentSkipListSet<Long> dbOnlyMinutes = new ConcurrentSkipListSet<>();
+
+    public HotWindowCounters(HyperLogLog hyperLogLog,
+                             StatsRepository statsRepository,
+                             @Value("${stat.hot-window.duration:24h}") Duration duration,
+                             @Value("${stat.hot-window.max-keys:1000}") int maxKeys) {
+        this.hyperLogLog = hyperLogLog;
+        this.windowMinutes = duration.toMinutes();
+        this.maxKeys = maxKeys;
+        this.minuteSlots = (int) (windowMinutes + FUTURE_TOLERANCE_MINUTES + 2);
+        this.hourSlots = (int) (duration.toHours() + 3);
+
+        this.coveredFromMinute = minuteOf(LocalDateTime.now()) + 1;
+        statsRepository.findHitMinutesFrom(timeOf(coveredFromMinute))
+                .forEach(minute -> dbOnlyMinutes.add(minuteOf(minute)));
+        log.info("Окно горячей статистики: {} мин., до {} ключей, покрытие с {}", windowMinutes, maxKeys,
+                timeOf(coveredFromMinute));
+    }
+
+    public void record(List<EndpointHit> hits) {
+        long nowMinute = minuteOf(LocalDateTime.now());
+        for (EndpointHit hit : hits) {
+            long minute = minuteOf(hit.getTimestamp());
+            if (minute < nowMinute - windowMinutes) {
+                continue;
+            }
+            if (minute > nowMinute + FUTURE_TOLERANCE_MINUTES) {
+                dbOnlyMinutes.add(minute);
+                continue;
+            }
+            StatKey key = new StatKey(hit.getApp(), hit.getUri());
+            apps.add(key.app());
+            long hash = HyperLogLog.hash(hit.getIp());
+            while (true) {
+                Window window = windows.get(key);
+                if (window == null) {
+                    if (windows.size() >= maxKeys) {
+                        markUntracked(key.uri(), minute);
+                        droppedHits.incrementAndGet();
+                        break;
+                    }
+                    window = windows.computeIfAbsent(key, k -> new Window());
+                }
+                if (window.add(minute, hash)) {
+                    break;
+                }
+                windows.remove(key, window);
+            }
+        }
+    }
+
+    // Uri из uris, у которых в span могут быть хиты, не попавшие в память: их нужно считать по БД
+    public List<String> untracked(List<String> uris, Span span) {
+        long first = minuteOf(span.from());
+        if (untrackedAllUntil.get() >= first) {
+            return List.copyOf(Set.copyOf(uris));
+        }
+        return Set.copyOf(uris).stream()
+                .filter(uri -> {
+                    Long last = untrackedUris.get(uri);
+                    return last != null && last >= first;
+                })
+                .toList();
+    }
+
+    // Часть [start, end], которую можно посчитать по памяти, выровненная по granularity:
+    // MINUTE для hits, HOUR для unique
+    public Optional<Span> span(LocalDateTime start, LocalDateTime end, Granularity granularity) {
+        LocalDateTime now = LocalDateTime.now();
+        long nowMinute = minuteOf(now);
+        long windowStart = Math.max(coveredFromMinute, nowMinute - windowMinutes);
+
+        LocalDateTime from = granularity.ceil(start.isAfter(timeOf(windowStart)) ? start : timeOf(windowStart));
+        // Если end не в прошлом, память отвечает до конца диапазона: хиты позже now + допуск
+        // в неё не попадают, но такие минуты отмечены в dbOnlyMinutes
+        boolean throughEnd = !end.isBefore(now);
+        LocalDateTime to = throughEnd ? end : granularity.floor(end);
+
+        Long dbOnly = dbOnlyMinutes.ceiling(minuteOf(from));
+        if (dbOnly != null && (throughEnd ? dbOnly <= minuteOf(to) : dbOnly < minuteOf(to))) {
+            to = granularity.floor(timeOf(dbOnly));
+            throughEnd = false;
+        }
+
+        boolean empty = throughEnd ? from.isAfter(to) : !from.isBefore(to);
+        return empty ? Optional.empty() : Optional.of(new Span(from, to, throughEnd));
+    }
+
+    public void addCounts(Span span, List<String> uris, Map<StatKey, Long> counts) {
+        long first = minuteOf(span.from());
+        long last = lastMinute(span);
+        forEachWindow(uris, (key, window) -> {
+            long hits = window.count(first, last);
+            if (hits > 0) {
+                counts.merge(key, hits, Long::sum);
+            }
+        });
+    }
+
+    public void mergeRegisters(Span span, List<String> uris, Map<StatKey, byte[]> registers) {
+        long first = hourOf(minuteOf(span.from()));
+        long last = hourOf(lastMinute(span));
+        forEachWindow(uris, (key, window) -> window.mergeInto(first, last,
+                () -> registers.computeIfAbsent(key, k -> new byte[hyperLogLog.getRegisterCount()])));
+    }
+
+    @Scheduled(fixedDelayString = "${stat.hot-window.sweep-interval:PT60S}")
+    public void sweep() {
+        long oldest = minuteOf(LocalDateTime.now()) - windowMinutes;
+        windows.forEach((key, window) -> {
+            if (window.retireIfOlder(oldest)) {
+                windows.remove(key, window);
+            }
+        });
+        evictColdest();
+        untrackedUris.values().removeIf(last -> last < oldest);
+        dbOnlyMinutes.headSet(oldest).clear();
+
+        long dropped = droppedHits.getAndSet(0);
+        if (dropped > 0) {
+            log.warn("Окно горячей статистики заполнено ({} ключей): {} хитов новых ключей считаются только по БД",
+                    maxKeys, dropped);
+        }
+    }
+
+    // Освобождает десятую часть лимита под новые ключи, вытесняя окна с самым старым последним хитом
+    private void evictColdest() {
+        int target = maxKeys - Math.max(1, maxKeys / 10);
+        int excess = windows.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+        windows.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastMinute()))
+                .limit(excess)
+                .toList()
+                .forEach(entry -> {
+                    long last = entry.getValue().retire();
+                    if (last != RETIRED) {
+                        // Отметка раньше удаления, чтобы запрос не увидел uri без окна и без отметки
+                        markUntracked(entry.getKey().uri(), last);
+                        windows.remove(entry.getKey(), entry.getValue());
+                    }
+                });
+    }
+
+    private void markUntracked(String uri, long minute) {
+        if (untrackedUris.size() >= maxKeys && !untrackedUris.containsKey(uri)) {
+            untrackedAllUntil.accumulateAndGet(minute, Math::max);
+            return;
+        }
+        untrackedUris.merge(uri, minute, Math::max);
+    }
+
+    private long lastMinute(Span span) {
+        long last = span.throughEnd() ? minuteOf(span.to()) : minuteOf(span.to()) - 1;
+        return Math.min(last, minuteOf(LocalDateTime.now()) + FUTURE_TOLERANCE_MINUTES);
+    }
+
+    private void forEachWindow(List<String> uris, BiConsumer<StatKey, Window> action) {
+        for (String uri : Set.copyOf(uris)) {
+            for (String app : apps) {
+                StatKey key = new StatKey(app, uri);
+                Window window = windows.get(key);
+                if (window != null) {
+                    action.accept(key, window);
+                }
+            }
+        }
+    }
+
+    private static long minuteOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static long hourOf(long minute) {
+        return Math.floorDiv(minute, 60);
+    }
+
+    private static LocalDateTime timeOf(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    // from включительно; to включительно при throughEnd, иначе исключительно
+    public record Span(LocalDateTime from, LocalDateTime to, boolean throughEnd) {
+    }
+
+    private final class Window {
+
+        // Слот минуты хранит (номер минуты << 32 | счётчик), обновляется CAS без блокировок
+        private final AtomicLongArray minutes = new AtomicLongArray(minuteSlots);
+        private final AtomicReferenceArray<HourSketch> hours = new AtomicReferenceArray<>(hourSlots);
+        private final AtomicLong lastMinute = new AtomicLong();
+
+        // false, если окно уже удалено sweep и хит нужно записать в новое
+        boolean add(long minute, long hash) {
+            long last;
+            do {
+                last = lastMinute.get();
+                if (last == RETIRED) {
+                    return false;
+                }
+            } while (last < minute && !lastMinute.compareAndSet(last, minute));
+
+            int slot = (int) Math.floorMod(minute, (long) minuteSlots);
+            while (true) {
+                long current = minutes.get(slot);
+                long slotMinute = current >>> 32;
+                long next;
+                if (slotMinute == minute) {
+                    next = current + 1;
+                } else if (slotMinute < minute) {
+                    next = minute << 32 | 1;
+                } else {
+                    break;
+                }
+                if (minutes.compareAndSet(slot, current, next)) {
+                    break;
+                }
+            }
+
+            byte[] registers = hourRegisters(hourOf(minute));
+            if (registers != null) {
+                int reg = hyperLogLog.registerIndex(hash);
+                byte rank = (byte) hyperLogLog.rank(hash);
+                byte current;
+                do {
+                    current = (byte) REGISTERS.getVolatile(registers, reg);
+                } while (current < rank && !REGISTERS.compareAndSet(registers, reg, current, rank));
+            }
+            return true;
+        }
+
+        long count(long first, long last) {
+            long total = 0;
+            for (long minute = first; minute <= last; minute++) {
+                long value = minutes.get((int) Math.floorMod(minute, (long) minuteSlots));
+                if (value >>> 32 == minute) {
+                    total += value & 0xFFFFFFFFL;
+                }
+            }
+            return total;
+        }
+
+        void mergeInto(long firstHour, long lastHour, Supplier<byte[]> target) {
+            for (long hour = firstHour; hour <= lastHour; hour++) {
+                HourSketch sketch = hours.get((int) Math.floorMod(hour, (long) hourSlots));
+                if (sketch == null || sketch.hour() != hour) {
+                    continue;
+                }
+                byte[] merged = target.get();
+                for (int reg = 0; reg < merged.length; reg++) {
+                    byte rank = (byte) REGISTERS.getVolatile(sketch.registers(), reg);
+                    if (rank > merged[reg]) {
+                        merged[reg] = rank;
+                    }
+                }
+            }
+        }
+
+        boolean retireIfOlder(long oldest) {
+            long last = lastMinute.get();
+            return last != RETIRED && last < oldest && lastMinute.compareAndSet(last, RETIRED);
+        }
+
+        long lastMinute() {
+            return lastMinute.get();
+        }
+
+        // Последняя минута с хитами или RETIRED, если окно уже удалено
+        long retire() {
+            return lastMinute.getAndSet(RETIRED);
+        }
+
+        private byte[] hourRegisters(long hour) {
+            int slot = (int) Math.floorMod(hour, (long) hourSlots);
+            while (true) {
+                HourSketch sketch = hours.get(slot);
+                if (sketch != null && sketch.hour() == hour) {
+                    return sketch.registers();
+                }
+                if (sketch != null && sketch.hour() > hour) {
+                    return null;
+                }
+                HourSketch fresh = new HourSketch(hour, new byte[hyperLogLog.getRegisterCount()]);
+                if (hours.compareAndSet(slot, sketch, fresh)) {
+                    return fresh.registers();
+                }
+            }
+        }
+    }
+
+    private record HourSketch(long hour, byte[] registers) {
+    }
+}
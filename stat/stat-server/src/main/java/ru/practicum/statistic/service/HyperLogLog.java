@@ -0,0 +1,78 @@
+package ru.practicum.statistic.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Параметры HyperLogLog для скетчей уникальных посетителей.
+// Хеш IP — первые 8 байт MD5 от inet_send(ip), чтобы PostgreSQL мог посчитать тот же регистр в SQL.
+// Смена точности несовместима с уже сохранёнными скетчами: таблицы endpoint_visitors_* нужно очистить,
+// при старте они заново заполнятся по сырым хитам.
+@Component
+public class HyperLogLog {
+
+    private final int precision;
+    private final int registerCount;
+
+    public HyperLogLog(@Value("${stat.hll.precision:11}") int precision) {
+        if (precision < 4 || precision > 14) {
+            throw new IllegalArgumentException("stat.hll.precision must be between 4 and 14");
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+    }
+
+    public static long hash(String ip) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(IpAddresses.wireBytes(ip));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int registerIndex(long hash) {
+        return (int) (hash >>> (64 - precision));
+    }
+
+    public int rank(long hash) {
+        return Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public int getRegisterCount() {
+        return registerCount;
+    }
+
+    public double alpha() {
+        return switch (registerCount) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / registerCount);
+        };
+    }
+
+    // Та же оценка с поправкой linear counting, что VisitorSketchRepository считает в SQL
+    public long estimate(byte[] registers) {
+        int zeros = 0;
+        double sum = 0;
+        for (byte rank : registers) {
+            if (rank == 0) {
+                zeros++;
+            }
+            sum += Math.scalb(1.0, -rank);
+        }
+        double raw = alpha() * registerCount * registerCount / sum;
+        if (zeros > 0 && raw <= 2.5 * registerCount) {
+            return Math.round(registerCount * Math.log((double) registerCount / zeros));
+        }
+        return Math.round(raw);
+    }
+}
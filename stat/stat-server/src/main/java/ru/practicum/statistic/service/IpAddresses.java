@@ -0,0 +1,73 @@
+package ru.practicum.statistic.service;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+// Приведение IP из /hit к значению колонки inet. /hit принимает любую непустую строку,
+// поэтому всё, что не является литералом IPv4/IPv6, отображается в адрес 100::/64 (RFC 6666)
+// с младшими 64 битами из md5 строки: разные строки остаются разными посетителями.
+// Та же схема повторена в SQL-функции миграции (HitPartitionRepository.IP_TO_INET_FUNCTION).
+public final class IpAddresses {
+
+    private static final Pattern IPV4 = Pattern.compile(
+            "((25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)\\.){3}(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)");
+    private static final Pattern IPV6 = Pattern.compile("[0-9A-Fa-f:.]*:[0-9A-Fa-f:.]*");
+
+    private IpAddresses() {
+    }
+
+    public static InetAddress parse(String ip) {
+        // Под регулярные выражения попадают только литералы, так что getByName не ходит в DNS
+        if (IPV4.matcher(ip).matches() || IPV6.matcher(ip).matches()) {
+            try {
+                InetAddress address = InetAddress.getByName(ip);
+                // Java сворачивает ::ffff:a.b.c.d в IPv4, PostgreSQL хранит его как IPv6
+                if (address instanceof Inet4Address && ip.indexOf(':') >= 0) {
+                    byte[] mapped = new byte[16];
+                    mapped[10] = (byte) 0xff;
+                    mapped[11] = (byte) 0xff;
+                    System.arraycopy(address.getAddress(), 0, mapped, 12, 4);
+                    return Inet6Address.getByAddress(null, mapped, -1);
+                }
+                return address;
+            } catch (UnknownHostException e) {
+                // не литерал IP — ниже хешируется как произвольная строка
+            }
+        }
+        return hashed(ip);
+    }
+
+    // Текст для параметра ?::inet
+    public static String toInetText(String ip) {
+        return parse(ip).getHostAddress();
+    }
+
+    // Байты inet_send(ip) в PostgreSQL: семейство, длина маски, флаг cidr, длина адреса, адрес
+    public static byte[] wireBytes(String ip) {
+        byte[] address = parse(ip).getAddress();
+        byte[] wire = new byte[4 + address.length];
+        wire[0] = (byte) (address.length == 4 ? 2 : 3);
+        wire[1] = (byte) (address.length * 8);
+        wire[3] = (byte) address.length;
+        System.arraycopy(address, 0, wire, 4, address.length);
+        return wire;
+    }
+
+    private static InetAddress hashed(String ip) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(ip.getBytes(StandardCharsets.UTF_8));
+            byte[] address = new byte[16];
+            address[0] = 0x01;
+            System.arraycopy(digest, 0, address, 8, 8);
+            return Inet6Address.getByAddress(null, address, -1);
+        } catch (NoSuchAlgorithmException | UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ru.practicum.statistic.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+import ru.practicum.statistic.repository.HitRollupRepository;
+import ru.practicum.statistic.repository.VisitorSketchRepository;
+
+@Component
+@DependsOn("hitPartitionManager")
+@RequiredArgsConstructor
+@ConditionalOnPostgres
+public class RollupBackfill {
+
+    private final HitRollupRepository rollupRepository;
+    private final VisitorSketchRepository visitorSketchRepository;
+
+    @PostConstruct
+    public void backfill() {
+        rollupRepository.encodeLegacyTables();
+        visitorSketchRepository.encodeLegacyTables();
+        rollupRepository.backfillIfEmpty();
+        visitorSketchRepository.backfillIfEmpty();
+    }
+}
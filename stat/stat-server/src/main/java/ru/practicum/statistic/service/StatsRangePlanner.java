@@ -0,0 +1,80 @@
+package ru.practicum.statistic.service;
+
+import ru.practicum.statistic.model.Granularity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Разбивает [start, end] на отрезки: крупные бакеты в середине, мелкие ближе к краям
+// и сырые хиты только там, где диапазон не выровнен по самому мелкому бакету
+public final class StatsRangePlanner {
+
+    private static final Granularity[] LEVELS = Granularity.values();
+
+    private StatsRangePlanner() {
+    }
+
+    public static List<Segment> plan(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, Granularity.MINUTE);
+    }
+
+    public static List<Segment> plan(LocalDateTime start, LocalDateTime end, Granularity finest) {
+        return plan(start, end, finest, true);
+    }
+
+    // inclusiveEnd = false планирует полуинтервал [start, end): так стыкуются отрезки БД и памяти
+    public static List<Segment> plan(LocalDateTime start, LocalDateTime end, Granularity finest,
+                                     boolean inclusiveEnd) {
+        List<Segment> segments = new ArrayList<>();
+        LocalDateTime from = finest.ceil(start);
+        LocalDateTime to = finest.floor(end);
+
+        if (!from.isBefore(to)) {
+            if (inclusiveEnd || start.isBefore(end)) {
+                segments.add(Segment.raw(start, end, inclusiveEnd));
+            }
+            return segments;
+        }
+        if (start.isBefore(from)) {
+            segments.add(Segment.raw(start, from, false));
+        }
+        addBuckets(segments, from, to, finest.ordinal());
+        if (inclusiveEnd || to.isBefore(end)) {
+            segments.add(Segment.raw(to, end, inclusiveEnd));
+        }
+        return segments;
+    }
+
+    private static void addBuckets(List<Segment> segments, LocalDateTime from, LocalDateTime to, int level) {
+        Granularity granularity = LEVELS[level];
+        if (level + 1 < LEVELS.length) {
+            Granularity coarser = LEVELS[level + 1];
+            LocalDateTime coarseFrom = coarser.ceil(from);
+            LocalDateTime coarseTo = coarser.floor(to);
+            if (coarseFrom.isBefore(coarseTo)) {
+                if (from.isBefore(coarseFrom)) {
+                    segments.add(new Segment(granularity, from, coarseFrom, false));
+                }
+                addBuckets(segments, coarseFrom, coarseTo, level + 1);
+                if (coarseTo.isBefore(to)) {
+                    segments.add(new Segment(granularity, coarseTo, to, false));
+                }
+                return;
+            }
+        }
+        segments.add(new Segment(granularity, from, to, false));
+    }
+
+    // granularity == null означает сырые строки endpoint_hits
+    public record Segment(Granularity granularity, LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+
+        static Segment raw(LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+            return new Segment(null, from, to, inclusiveEnd);
+        }
+
+        public boolean isRaw() {
+            return granularity == null;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ru.practicum.statistic.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.statistic.dto.ViewStats;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.UriFilter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// LRU-кэш результатов /stats с ограничением по числу записей и по объёму.
+// end в ключе округляется вниз до resolution, так что повторные запросы «до текущего момента» совпадают,
+// а ответ отстаёт от БД не больше чем на resolution.
+// Запись устаревает, только если закоммиченный хит попал по времени в её [start, end]: обычные хиты
+// приходят с текущей меткой, позже любого округлённого end, и кэш не трогают.
+@Component
+@ConditionalOnProperty(name = "stat.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class StatsResultCache {
+
+    private static final int MAX_TRACKED_BATCHES = 4096;
+    private static final long ROW_BYTES = 64;
+
+    private final long resolutionSeconds;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Ключи по округлённому end: по нему ищутся записи, задетые хитами с данной меткой
+    private final NavigableMap<LocalDateTime, Set<Key>> keysByEnd = new TreeMap<>();
+    private long bytes;
+
+    // Номер последней закоммиченной пачки и диапазоны меток недавних пачек:
+    // по ним проверяется, не устарел ли результат, пока он считался
+    private final AtomicLong ingestVersion = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, TimeRange> recentBatches = new ConcurrentSkipListMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictedBySize;
+    private final Counter evictedByIngest;
+
+    public StatsResultCache(MeterRegistry meterRegistry,
+                            @Value("${stat.cache.resolution:10s}") Duration resolution,
+                            @Value("${stat.cache.max-entries:10000}") int maxEntries,
+                            @Value("${stat.cache.max-size:64MB}") DataSize maxSize,
+                            @Value("${stat.cache.max-entry-size:1MB}") DataSize maxEntrySize) {
+        this.resolutionSeconds = Math.max(resolution.toSeconds(), 1);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxSize.toBytes();
+        this.maxEntryBytes = maxEntrySize.toBytes();
+
+        this.hits = Counter.builder("stat.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("stat.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictedBySize = Counter.builder("stat.cache.evictions").tag("cause", "size").register(meterRegistry);
+        this.evictedByIngest = Counter.builder("stat.cache.evictions").tag("cause", "ingest")
+                .register(meterRegistry);
+        Gauge.builder("stat.cache.entries", this, cache -> cache.size()).register(meterRegistry);
+        Gauge.builder("stat.cache.bytes", this, cache -> cache.bytes()).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("stat.cache.hit.ratio", this, StatsResultCache::hitRatio).register(meterRegistry);
+    }
+
+    public LocalDateTime snap(LocalDateTime end) {
+        long seconds = end.toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(seconds, resolutionSeconds) * resolutionSeconds, 0,
+                ZoneOffset.UTC);
+    }
+
+    // Отдаёт результат из кэша или считает его через loader, передавая строки дальше по мере чтения.
+    // Результат больше max-entry-size не кэшируется.
+    public void stream(Key key, Consumer<ViewStats> consumer, Consumer<Consumer<ViewStats>> loader) {
+        List<ViewStats> cached = get(key);
+        if (cached != null) {
+            hits.increment();
+            cached.forEach(consumer);
+            return;
+        }
+        misses.increment();
+
+        long version = ingestVersion.get();
+        Collector collector = new Collector(consumer);
+        loader.accept(collector);
+        if (collector.rows != null) {
+            put(key, new Entry(List.copyOf(collector.rows), collector.bytes + keyBytes(key)), version);
+        }
+    }
+
+    // Вызывается после коммита пачки хитов
+    public void onHitsCommitted(List<EndpointHit> batch) {
+        LocalDateTime min = null;
+        LocalDateTime max = null;
+        for (EndpointHit hit : batch) {
+            LocalDateTime timestamp = hit.getTimestamp();
+            min = min == null || timestamp.isBefore(min) ? timestamp : min;
+            max = max == null || timestamp.isAfter(max) ? timestamp : max;
+        }
+        if (min == null) {
+            return;
+        }
+        long version = ingestVersion.incrementAndGet();
+        recentBatches.put(version, new TimeRange(min, max));
+        while (recentBatches.size() > MAX_TRACKED_BATCHES) {
+            recentBatches.pollFirstEntry();
+        }
+        invalidate(min, max);
+    }
+
+    private synchronized List<ViewStats> get(Key key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.rows();
+    }
+
+    // Проверка пачек идёт под той же блокировкой, что и invalidate: пачка, не видная здесь,
+    // будет обработана invalidate уже после вставки
+    private synchronized void put(Key key, Entry entry, long version) {
+        if (changedSince(version, key.start(), key.end())) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes();
+        }
+        bytes += entry.bytes();
+        keysByEnd.computeIfAbsent(key.end(), end -> new HashSet<>()).add(key);
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.getValue().bytes();
+            unindex(evicted.getKey());
+            evictedBySize.increment();
+        }
+    }
+
+    private synchronized void invalidate(LocalDateTime min, LocalDateTime max) {
+        Iterator<Set<Key>> affected = keysByEnd.tailMap(min, true).values().iterator();
+        while (affected.hasNext()) {
+            Set<Key> keys = affected.next();
+            keys.removeIf(key -> {
+                if (key.start().isAfter(max)) {
+                    return false;
+                }
+                Entry removed = entries.remove(key);
+                if (removed != null) {
+                    bytes -= removed.bytes();
+                    evictedByIngest.increment();
+                }
+                return true;
+            });
+            if (keys.isEmpty()) {
+                affected.remove();
+            }
+        }
+    }
+
+    private void unindex(Key key) {
+        Set<Key> keys = keysByEnd.get(key.end());
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByEnd.remove(key.end());
+        }
+    }
+
+    // Пачки, закоммиченные после version, могли не попасть в посчитанный результат
+    private boolean changedSince(long version, LocalDateTime start, LocalDateTime end) {
+        if (ingestVersion.get() == version) {
+            return false;
+        }
+        Map.Entry<Long, TimeRange> oldest = recentBatches.firstEntry();
+        if (oldest == null || oldest.getKey() > version + 1) {
+            return true;
+        }
+        return recentBatches.tailMap(version, false).values().stream()
+                .anyMatch(range -> !range.min().isAfter(end) && !range.max().isBefore(start));
+    }
+
+    private static long keyBytes(Key key) {
+        long bytes = ROW_BYTES;
+        for (String uri : key.uris().uris()) {
+            bytes += 2L * uri.length();
+        }
+        for (String pattern : key.uris().patterns()) {
+            bytes += 2L * pattern.length();
+        }
+        return bytes;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized long bytes() {
+        return bytes;
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    // uris и шаблоны сортируются, чтобы порядок параметров не давал разных ключей
+    public record Key(LocalDateTime start, LocalDateTime end, UriFilter uris,
+                      boolean unique, boolean exact, Integer limit) {
+
+        public Key {
+            uris = new UriFilter(uris.uris().stream().distinct().sorted().toList(),
+                    uris.patterns().stream().distinct().sorted().toList());
+        }
+    }
+
+    private record Entry(List<ViewStats> rows, long bytes) {
+    }
+
+    private record TimeRange(LocalDateTime min, LocalDateTime max) {
+    }
+
+    // Передаёт строки дальше и копит их для кэша, пока не превышен max-entry-size
+    private final class Collector implements Consumer<ViewStats> {
+
+        private final Consumer<ViewStats> downstream;
+        private List<ViewStats> rows = new ArrayList<>();
+        private long bytes;
+
+        private Collector(Consumer<ViewStats> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void accept(ViewStats stats) {
+            downstream.accept(stats);
+            if (rows == null) {
+                return;
+            }
+            bytes += ROW_BYTES + 2L * (stats.getApp().length() + stats.getUri().length());
+            if (bytes > maxEntryBytes) {
+                rows = null;
+            } else {
+                rows.add(stats);
+            }
+        }
+    }
+}
@@ -1,15 +1,28 @@
 package ru.practicum.statistic.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.statistic.dto.EndpointHitRequest;
 import ru.practicum.statistic.dto.ViewStats;
 import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.Granularity;
+import ru.practicum.statistic.model.StatKey;
+import ru.practicum.statistic.model.UriFilter;
+import ru.practicum.statistic.repository.HitRollupRepository;
 import ru.practicum.statistic.repository.StatsRepository;
+import ru.practicum.statistic.repository.VisitorSketchRepository;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
@@ -17,34 +30,143 @@ import java.util.List;
 public class StatsService {
 
     private final StatsRepository statsRepository;
+    private final ObjectProvider<HitRollupRepository> rollupRepository;
+    private final ObjectProvider<VisitorSketchRepository> visitorSketchRepository;
+    private final HitWriter hitWriter;
+    private final ObjectProvider<WriteBehindBuffer> writeBehindBuffer;
+    private final ObjectProvider<HotWindowCounters> hotWindowCounters;
+    private final ObjectProvider<StatsResultCache> statsResultCache;
+    private final HyperLogLog hyperLogLog;
 
-    @Transactional
-    public EndpointHit saveHit(EndpointHitRequest hitRequest) {
-        EndpointHit hit = EndpointHit.builder()
-                .app(hitRequest.getApp())
-                .uri(hitRequest.getUri())
-                .ip(hitRequest.getIp())
-                .timestamp(hitRequest.getTimestamp())
-                .build();
-        return statsRepository.save(hit);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void saveHit(EndpointHitRequest hitRequest) {
+        saveHits(List.of(hitRequest));
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void saveHits(List<EndpointHitRequest> hitRequests) {
+        List<EndpointHit> hits = hitRequests.stream()
+                .map(StatsService::toEndpointHit)
+                .toList();
+
+        WriteBehindBuffer buffer = writeBehindBuffer.getIfAvailable();
+        if (buffer != null) {
+            hits = buffer.offerAll(hits);
+        }
+        if (!hits.isEmpty()) {
+            hitWriter.write(hits);
+        }
     }
 
-    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
-                                    List<String> uris, Boolean unique) {
+    // Строки передаются в consumer по мере чтения курсора, без сборки всего результата в памяти.
+    // Ошибки параметров выбрасываются до первой строки, пока ответ ещё не начат.
+    public void streamStats(LocalDateTime start, LocalDateTime end, UriFilter uris,
+                            Boolean unique, Boolean exact, Integer limit, Consumer<ViewStats> consumer) {
         if (start.isAfter(end)) {
             throw new IllegalArgumentException("Start date must be before end date");
         }
 
-        List<StatsRepository.StatsProjection> results;
+        StatsResultCache cache = statsResultCache.getIfAvailable();
+        if (cache != null) {
+            // Кэш отвечает по end, округлённому вниз до stat.cache.resolution
+            LocalDateTime snapped = cache.snap(end);
+            if (!snapped.isBefore(start)) {
+                StatsResultCache.Key key = new StatsResultCache.Key(start, snapped, uris,
+                        Boolean.TRUE.equals(unique), Boolean.TRUE.equals(exact), limit);
+                cache.stream(key, consumer, sink -> queryStats(start, snapped, uris, unique, exact, limit, sink));
+                return;
+            }
+        }
+        queryStats(start, end, uris, unique, exact, limit, consumer);
+    }
+
+    private void queryStats(LocalDateTime start, LocalDateTime end, UriFilter uris,
+                            Boolean unique, Boolean exact, Integer limit, Consumer<ViewStats> consumer) {
+        if (Boolean.TRUE.equals(exact) || rollupRepository.getIfAvailable() == null) {
+            // Точный подсчёт по сырым хитам: медленно, но без погрешности HyperLogLog.
+            // Без PostgreSQL агрегатов и скетчей нет, и так считается любой запрос
+            statsRepository.streamExactStats(start, end, uris, Boolean.TRUE.equals(unique), limit, consumer);
+            return;
+        }
+
+        Granularity finest = Boolean.TRUE.equals(unique) ? Granularity.HOUR : Granularity.MINUTE;
+        HotWindowCounters counters = hotWindowCounters.getIfAvailable();
+        // Окно в памяти ищется по точным uri, шаблоны всегда идут в БД
+        if (counters != null && !uris.uris().isEmpty() && !uris.hasPatterns()) {
+            Optional<HotWindowCounters.Span> span = counters.span(start, end, finest);
+            if (span.isPresent()) {
+                // Uri, часть хитов которых не попала в память из-за лимита ключей, считаются по БД целиком
+                List<String> untracked = counters.untracked(uris.uris(), span.get());
+                List<String> tracked = uris.uris().stream()
+                        .distinct()
+                        .filter(uri -> !untracked.contains(uri))
+                        .toList();
+                List<ViewStats> stats = new ArrayList<>();
+                if (!tracked.isEmpty()) {
+                    stats.addAll(getRecentStats(counters, span.get(), start, end, UriFilter.of(tracked), finest));
+                }
+                if (!untracked.isEmpty()) {
+                    queryStored(start, end, UriFilter.of(untracked), unique, finest, null, stats::add);
+                }
+                stats.stream()
+                        .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                        .limit(limit != null ? limit : Long.MAX_VALUE)
+                        .forEach(consumer);
+                return;
+            }
+        }
+
+        queryStored(start, end, uris, unique, finest, limit, consumer);
+    }
 
+    private void queryStored(LocalDateTime start, LocalDateTime end, UriFilter uris, Boolean unique,
+                             Granularity finest, Integer limit, Consumer<ViewStats> consumer) {
         if (Boolean.TRUE.equals(unique)) {
-            results = statsRepository.findUniqueStatsNative(start, end, uris);
+            visitorSketchRepository.getObject().streamUniqueStats(StatsRangePlanner.plan(start, end, finest), uris,
+                    limit, consumer);
+        } else {
+            rollupRepository.getObject().streamStats(StatsRangePlanner.plan(start, end, finest), uris, limit, consumer);
+        }
+    }
+
+    // Недавняя часть диапазона берётся из памяти, остальное — одним запросом к агрегатам.
+    // Результат ограничен числом запрошенных uris, поэтому собирается целиком.
+    private List<ViewStats> getRecentStats(HotWindowCounters counters, HotWindowCounters.Span span,
+                                           LocalDateTime start, LocalDateTime end,
+                                           UriFilter uris, Granularity finest) {
+        List<StatsRangePlanner.Segment> segments = new ArrayList<>(
+                StatsRangePlanner.plan(start, span.from(), finest, false));
+        if (!span.throughEnd()) {
+            segments.addAll(StatsRangePlanner.plan(span.to(), end, finest, true));
+        }
+
+        Map<StatKey, Long> hits = new HashMap<>();
+        if (finest == Granularity.HOUR) {
+            Map<StatKey, byte[]> registers = segments.isEmpty()
+                    ? new HashMap<>()
+                    : visitorSketchRepository.getObject().findRegisters(segments, uris);
+            counters.mergeRegisters(span, uris.uris(), registers);
+            registers.forEach((key, sketch) -> hits.put(key, hyperLogLog.estimate(sketch)));
         } else {
-            results = statsRepository.findStatsNative(start, end, uris);
+            if (!segments.isEmpty()) {
+                rollupRepository.getObject().findStats(segments, uris).forEach(stats ->
+                        hits.put(new StatKey(stats.getApp(), stats.getUri()), stats.getHits()));
+            }
+            counters.addCounts(span, uris.uris(), hits);
         }
 
-        return results.stream()
-                .map(p -> new ViewStats(p.getApp(), p.getUri(), p.getHits()))
+        return hits.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
                 .toList();
     }
+
+    private static EndpointHit toEndpointHit(EndpointHitRequest hitRequest) {
+        return EndpointHit.builder()
+                .app(hitRequest.getApp())
+                .uri(hitRequest.getUri())
+                .ip(hitRequest.getIp())
+                .timestamp(hitRequest.getTimestamp())
+                .build();
+    }
 }
\ No newline at end of file
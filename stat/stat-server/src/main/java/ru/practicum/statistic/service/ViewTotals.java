@@ -0,0 +1,206 @@
+package ru.practicum.statistic.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.config.ConditionalOnPostgres;
+import ru.practicum.statistic.dto.ViewCount;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.Granularity;
+import ru.practicum.statistic.model.UriFilter;
+import ru.practicum.statistic.repository.HitRollupRepository;
+import ru.practicum.statistic.repository.VisitorSketchRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Просмотры каждого uri за всё время и журнал их изменений для /stats/views/stream.
+// При старте заполняется по агрегатам в БД, дальше пополняется после коммита HitWriter,
+// поэтому, как и HotWindowCounters, видит только хиты этого экземпляра stat-server.
+// Каждое изменение получает номер; журнал хранит последние retained-updates изменений,
+// подписчик, отставший сильнее, получает снимок всех uri. Номера действуют в пределах epoch — времени старта.
+// На uri приходится около 2 КБ регистров HyperLogLog, поэтому в памяти держатся не больше max-uris uri:
+// при переполнении вытесняется uri, дольше всех не получавший хитов, и подписчики получают его с evicted.
+// Итоги вытесненного uri в памяти уже неполны, поэтому он больше не отслеживается. Вытесненные uri
+// запоминаются, пока их не больше 10 * max-uris; после этого новые uri тоже не отслеживаются —
+// подписчик читает просмотры неотслеживаемых uri через /stats
+@Slf4j
+@Component
+@DependsOn("rollupBackfill")
+@ConditionalOnProperty(name = "stat.view-stream.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnPostgres
+public class ViewTotals {
+
+    private static final LocalDateTime SINCE = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final HyperLogLog hyperLogLog;
+    private final long epoch = System.currentTimeMillis();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition updated = lock.newCondition();
+    // В порядке последнего хита: первым идёт кандидат на вытеснение
+    private final LinkedHashMap<String, Totals> totals = new LinkedHashMap<>(16, 0.75f, true);
+    // Вытесненные uri: их итоги в памяти неполны, поэтому изменения по ним не передаются
+    private final Set<String> evicted = new HashSet<>();
+    private boolean admissionClosed;
+    private final ViewCount[] journal;
+    private final int maxUris;
+    private long head;
+
+    public ViewTotals(HyperLogLog hyperLogLog,
+                      HitRollupRepository rollupRepository,
+                      VisitorSketchRepository visitorSketchRepository,
+                      @Value("${stat.view-stream.retained-updates:100000}") int retainedUpdates,
+                      @Value("${stat.view-stream.max-uris:10000}") int maxUris) {
+        this.hyperLogLog = hyperLogLog;
+        this.journal = new ViewCount[retainedUpdates];
+        this.maxUris = maxUris;
+
+        LocalDateTime now = LocalDateTime.now();
+        rollupRepository.findStats(StatsRangePlanner.plan(SINCE, now, Granularity.MINUTE), UriFilter.of(null))
+                .forEach(stats -> totals(stats.getUri()).hits += stats.getHits());
+        visitorSketchRepository.findRegisters(StatsRangePlanner.plan(SINCE, now, Granularity.HOUR),
+                        UriFilter.of(null))
+                .forEach((key, registers) -> {
+                    byte[] merged = totals(key.uri()).registers;
+                    for (int reg = 0; reg < merged.length; reg++) {
+                        merged[reg] = (byte) Math.max(merged[reg], registers[reg]);
+                    }
+                });
+        totals.values().forEach(value -> value.unique = hyperLogLog.estimate(value.registers));
+        if (totals.size() > maxUris) {
+            // При старте остаются самые просматриваемые uri
+            List<String> coldest = totals.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().hits))
+                    .limit(totals.size() - maxUris)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            coldest.forEach(totals::remove);
+            evicted.addAll(coldest);
+            closeAdmissionIfFull();
+        }
+        log.info("Просмотры за всё время загружены: {} uri, не поместились {}", totals.size(), evicted.size());
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public void apply(List<EndpointHit> hits) {
+        lock.lock();
+        try {
+            Set<String> touched = new LinkedHashSet<>();
+            for (EndpointHit hit : hits) {
+                if (!tracked(hit.getUri())) {
+                    continue;
+                }
+                Totals value = totals(hit.getUri());
+                value.hits++;
+                long hash = HyperLogLog.hash(hit.getIp());
+                int reg = hyperLogLog.registerIndex(hash);
+                value.registers[reg] = (byte) Math.max(value.registers[reg], hyperLogLog.rank(hash));
+                touched.add(hit.getUri());
+            }
+            for (String uri : touched) {
+                Totals value = totals.get(uri);
+                value.unique = hyperLogLog.estimate(value.registers);
+                append(new ViewCount(uri, value.hits, value.unique, false));
+            }
+            evict();
+            updated.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Изменения с номерами после after, не больше max; ждёт не дольше wait, если новых нет.
+    // Снимок всех uri, если after не из этой epoch или изменения после него уже вытеснены из журнала
+    public Updates read(long afterEpoch, long after, int max, Duration wait) throws InterruptedException {
+        lock.lock();
+        try {
+            if (afterEpoch != epoch || after > head || after < head - journal.length) {
+                List<ViewCount> snapshot = new ArrayList<>(totals.size());
+                totals.forEach((uri, value) -> snapshot.add(new ViewCount(uri, value.hits, value.unique, false)));
+                return new Updates(snapshot, head, true);
+            }
+            long remaining = wait.toNanos();
+            while (head == after && remaining > 0) {
+                remaining = updated.awaitNanos(remaining);
+            }
+            long to = Math.min(head, after + max);
+            List<ViewCount> updates = new ArrayList<>((int) (to - after));
+            for (long offset = after + 1; offset <= to; offset++) {
+                updates.add(journal[(int) (offset % journal.length)]);
+            }
+            return new Updates(updates, to, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(ViewCount count) {
+        head++;
+        journal[(int) (head % journal.length)] = count;
+    }
+
+    // Отслеживаемый uri или новый, пока вытесненные uri ещё запоминаются
+    private boolean tracked(String uri) {
+        if (totals.containsKey(uri)) {
+            return true;
+        }
+        return !admissionClosed && !evicted.contains(uri);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Totals>> coldest = totals.entrySet().iterator();
+        while (totals.size() > maxUris && coldest.hasNext()) {
+            String uri = coldest.next().getKey();
+            coldest.remove();
+            append(new ViewCount(uri, 0, 0, true));
+            if (!admissionClosed) {
+                evicted.add(uri);
+                closeAdmissionIfFull();
+            }
+        }
+    }
+
+    private void closeAdmissionIfFull() {
+        if (evicted.size() >= maxUris * 10L) {
+            admissionClosed = true;
+            evicted.clear();
+            log.warn("Поток просмотров больше не принимает новые uri: вытеснено больше {}", maxUris * 10L);
+        }
+    }
+
+    private Totals totals(String uri) {
+        return totals.computeIfAbsent(uri, key -> new Totals(hyperLogLog.getRegisterCount()));
+    }
+
+    // snapshot: counts — все uri на момент offset; иначе counts — изменения с номерами до offset подряд
+    public record Updates(List<ViewCount> counts, long offset, boolean snapshot) {
+    }
+
+    private static final class Totals {
+
+        private final byte[] registers;
+        private long hits;
+        private long unique;
+
+        private Totals(int registerCount) {
+            this.registers = new byte[registerCount];
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ru.practicum.statistic.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stat.ingest.write-behind.enabled", havingValue = "true")
+public class WriteBehindBuffer implements SmartLifecycle {
+
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final HitWriter hitWriter;
+    private final BlockingQueue<EndpointHit> queue;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final Duration shutdownTimeout;
+    private final boolean virtualThreads;
+
+    private final Counter droppedOverflow;
+    private final Counter droppedWriteFailed;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSizeSummary;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public WriteBehindBuffer(HitWriter hitWriter,
+                             MeterRegistry meterRegistry,
+                             @Value("${stat.ingest.write-behind.capacity:65536}") int capacity,
+                             @Value("${stat.ingest.write-behind.flush-size:1000}") int flushSize,
+                             @Value("${stat.ingest.write-behind.flush-interval:200ms}") Duration flushInterval,
+                             @Value("${stat.ingest.write-behind.shutdown-timeout:30s}") Duration shutdownTimeout,
+                             @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.hitWriter = hitWriter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.shutdownTimeout = shutdownTimeout;
+        this.virtualThreads = virtualThreads;
+
+        Gauge.builder("stat.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Хиты, ожидающие записи в БД")
+                .register(meterRegistry);
+        this.droppedOverflow = Counter.builder("stat.ingest.dropped")
+                .tag("reason", "overflow")
+                .register(meterRegistry);
+        this.droppedWriteFailed = Counter.builder("stat.ingest.dropped")
+                .tag("reason", "write-failed")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stat.ingest.flush.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.flushSizeSummary = DistributionSummary.builder("stat.ingest.flush.size")
+                .register(meterRegistry);
+    }
+
+    // При переполнении хиты отбрасываются и учитываются в stat.ingest.dropped.
+    // Если буфер уже остановлен, хиты возвращаются вызывающему для синхронной записи.
+    public List<EndpointHit> offerAll(List<EndpointHit> hits) {
+        if (!running) {
+            return hits;
+        }
+        for (EndpointHit hit : hits) {
+            if (!queue.offer(hit)) {
+                droppedOverflow.increment();
+            }
+        }
+        return List.of();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform();
+        writerThread = builder.name("stat-write-behind").start(this::drainLoop);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            writerThread.join(shutdownTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Буфер записи не успел опустеть за {}, в очереди осталось {} хитов",
+                    shutdownTimeout, queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Останавливаемся после веб-сервера, чтобы дописать всё, что успели принять запросы
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void drainLoop() {
+        List<EndpointHit> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                flush(batch);
+                return;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    // Ждём первый хит, затем добираем пачку до flushSize или до истечения flushInterval
+    private void fillBatch(List<EndpointHit> batch) throws InterruptedException {
+        EndpointHit first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || remaining <= 0) {
+                return;
+            }
+            EndpointHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<EndpointHit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+            try {
+                flushTimer.record(() -> hitWriter.write(batch));
+                flushSizeSummary.record(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Не удалось записать пачку из {} хитов, попытка {} из {}",
+                        batch.size(), attempt, MAX_WRITE_ATTEMPTS, e);
+                if (attempt < MAX_WRITE_ATTEMPTS && !sleepBeforeRetry(attempt)) {
+                    break;
+                }
+            }
+        }
+        droppedWriteFailed.increment(batch.size());
+    }
+
+    private boolean sleepBeforeRetry(int attempt) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(100L * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+-- Схема локального профиля на H2: только словари и сырые хиты без секций.
+-- Агрегаты и скетчи посетителей есть только на PostgreSQL (schema.sql), без них /stats считается по сырым хитам.
+-- Домен inet принимает приведение ?::inet из вставки хитов
+
+CREATE DOMAIN IF NOT EXISTS inet AS VARCHAR(50);
+
+CREATE TABLE IF NOT EXISTS endpoint_apps (
+    id SMALLINT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_endpoint_apps PRIMARY KEY (id),
+    CONSTRAINT uq_endpoint_apps_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS endpoint_uris (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY,
+    uri VARCHAR(512) NOT NULL,
+    CONSTRAINT pk_endpoint_uris PRIMARY KEY (id),
+    CONSTRAINT uq_endpoint_uris_uri UNIQUE (uri)
+);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip inet NOT NULL,
+    hit_timestamp TIMESTAMP NOT NULL,
+    CONSTRAINT pk_endpoint_hits PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS endpoint_hits_timestamp_idx ON endpoint_hits (hit_timestamp);
+CREATE INDEX IF NOT EXISTS endpoint_hits_uri_timestamp_idx ON endpoint_hits (uri_id, hit_timestamp);
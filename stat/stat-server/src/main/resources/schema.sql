@@ -1,7 +1,72 @@
-CREATE TABLE IF NOT EXISTS endpoint_hits (
-    id BIGSERIAL PRIMARY KEY,
-    app VARCHAR(255) NOT NULL,
+-- endpoint_hits секционирована по hit_timestamp, её создаёт и обслуживает HitPartitionManager.
+-- app и uri хранятся в ней как id словарей endpoint_apps и endpoint_uris, ip — как inet.
+-- Агрегаты и скетчи посетителей тоже ключуются id словарей; имена подставляются только в ответах /stats
+
+CREATE TABLE IF NOT EXISTS endpoint_apps (
+    id SMALLINT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_endpoint_apps PRIMARY KEY (id),
+    CONSTRAINT uq_endpoint_apps_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS endpoint_uris (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY,
     uri VARCHAR(512) NOT NULL,
-    ip VARCHAR(50)  NOT NULL,
-    hit_timestamp TIMESTAMP  NOT NULL
-);
\ No newline at end of file
+    CONSTRAINT pk_endpoint_uris PRIMARY KEY (id),
+    CONSTRAINT uq_endpoint_uris_uri UNIQUE (uri)
+);
+
+-- Диапазоны по префиксу для шаблонов /stats/query не зависят от правил сортировки базы
+CREATE INDEX IF NOT EXISTS idx_endpoint_uris_uri_c ON endpoint_uris (uri COLLATE "C");
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_minute (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL,
+    CONSTRAINT pk_endpoint_hits_minute PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_minute_bucket ON endpoint_hits_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_hour (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL,
+    CONSTRAINT pk_endpoint_hits_hour PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_hour_bucket ON endpoint_hits_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_day (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    hits BIGINT NOT NULL,
+    CONSTRAINT pk_endpoint_hits_day PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_day_bucket ON endpoint_hits_day (bucket);
+
+CREATE TABLE IF NOT EXISTS endpoint_visitors_hour (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    reg SMALLINT NOT NULL,
+    rank SMALLINT NOT NULL,
+    CONSTRAINT pk_endpoint_visitors_hour PRIMARY KEY (uri_id, bucket, app_id, reg)
+);
+
+CREATE INDEX IF NOT EXISTS idx_endpoint_visitors_hour_bucket ON endpoint_visitors_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS endpoint_visitors_day (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    reg SMALLINT NOT NULL,
+    rank SMALLINT NOT NULL,
+    CONSTRAINT pk_endpoint_visitors_day PRIMARY KEY (uri_id, bucket, app_id, reg)
+);
+
+CREATE INDEX IF NOT EXISTS idx_endpoint_visitors_day_bucket ON endpoint_visitors_day (bucket);
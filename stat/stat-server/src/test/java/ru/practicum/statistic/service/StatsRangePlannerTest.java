@@ -0,0 +1,123 @@
+package ru.practicum.statistic.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.statistic.model.Granularity;
+import ru.practicum.statistic.service.StatsRangePlanner.Segment;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsRangePlannerTest {
+
+    @Test
+    void usesCoarsestBucketsInTheMiddle() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 4, 5, 20, 10);
+
+        assertThat(StatsRangePlanner.plan(start, end)).containsExactly(
+                raw(start, at(1, 10, 16), false),
+                new Segment(Granularity.MINUTE, at(1, 10, 16), at(1, 11, 0), false),
+                new Segment(Granularity.HOUR, at(1, 11, 0), at(2, 0, 0), false),
+                new Segment(Granularity.DAY, at(2, 0, 0), at(4, 0, 0), false),
+                new Segment(Granularity.HOUR, at(4, 0, 0), at(4, 5, 0), false),
+                new Segment(Granularity.MINUTE, at(4, 5, 0), at(4, 5, 20), false),
+                raw(at(4, 5, 20), end, true));
+    }
+
+    @Test
+    void alignedRangeKeepsInclusiveEndInRawHits() {
+        LocalDateTime start = at(1, 0, 0);
+        LocalDateTime end = at(3, 0, 0);
+
+        assertThat(StatsRangePlanner.plan(start, end)).containsExactly(
+                new Segment(Granularity.DAY, start, end, false),
+                raw(end, end, true));
+    }
+
+    @Test
+    void alignedHalfOpenRangeNeedsNoRawHits() {
+        LocalDateTime start = at(1, 0, 0);
+        LocalDateTime end = at(3, 0, 0);
+
+        assertThat(StatsRangePlanner.plan(start, end, Granularity.MINUTE, false)).containsExactly(
+                new Segment(Granularity.DAY, start, end, false));
+    }
+
+    @Test
+    void rangeInsideOneBucketIsReadFromRawHits() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 10);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 10, 15, 50);
+
+        assertThat(StatsRangePlanner.plan(start, end)).containsExactly(raw(start, end, true));
+        assertThat(StatsRangePlanner.plan(start, end, Granularity.MINUTE, false))
+                .containsExactly(raw(start, end, false));
+    }
+
+    @Test
+    void emptyHalfOpenRangeHasNoSegments() {
+        LocalDateTime time = at(1, 10, 0);
+
+        assertThat(StatsRangePlanner.plan(time, time, Granularity.MINUTE, false)).isEmpty();
+        assertThat(StatsRangePlanner.plan(time, time)).containsExactly(raw(time, time, true));
+    }
+
+    @Test
+    void startsFromFinestGivenGranularity() {
+        LocalDateTime start = at(1, 10, 15);
+        LocalDateTime end = at(1, 14, 30);
+
+        assertThat(StatsRangePlanner.plan(start, end, Granularity.HOUR)).containsExactly(
+                raw(start, at(1, 11, 0), false),
+                new Segment(Granularity.HOUR, at(1, 11, 0), at(1, 14, 0), false),
+                raw(at(1, 14, 0), end, true));
+    }
+
+    // Отрезки идут подряд без дыр и перекрытий, бакеты выровнены по своей гранулярности,
+    // и включительным может быть только последний отрезок
+    @Test
+    void segmentsTileTheWholeRange() {
+        Random random = new Random(42);
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            LocalDateTime start = base.plusSeconds(random.nextInt(10 * 24 * 3600));
+            LocalDateTime end = start.plusSeconds(random.nextInt(5 * 24 * 3600));
+            boolean inclusiveEnd = random.nextBoolean();
+            Granularity finest = Granularity.values()[random.nextInt(Granularity.values().length)];
+
+            List<Segment> segments = StatsRangePlanner.plan(start, end, finest, inclusiveEnd);
+
+            if (!inclusiveEnd && start.equals(end)) {
+                assertThat(segments).isEmpty();
+                continue;
+            }
+            assertThat(segments.get(0).from()).isEqualTo(start);
+            assertThat(segments.get(segments.size() - 1).to()).isEqualTo(end);
+            assertThat(segments.get(segments.size() - 1).inclusiveEnd()).isEqualTo(inclusiveEnd);
+            for (int j = 0; j < segments.size(); j++) {
+                Segment segment = segments.get(j);
+                assertThat(segment.from()).isBeforeOrEqualTo(segment.to());
+                if (j > 0) {
+                    assertThat(segment.from()).isEqualTo(segments.get(j - 1).to());
+                    assertThat(segments.get(j - 1).inclusiveEnd()).isFalse();
+                }
+                if (!segment.isRaw()) {
+                    assertThat(segment.granularity()).isGreaterThanOrEqualTo(finest);
+                    assertThat(segment.granularity().floor(segment.from())).isEqualTo(segment.from());
+                    assertThat(segment.granularity().floor(segment.to())).isEqualTo(segment.to());
+                    assertThat(segment.from()).isBefore(segment.to());
+                }
+            }
+        }
+    }
+
+    private static LocalDateTime at(int day, int hour, int minute) {
+        return LocalDateTime.of(2024, 1, day, hour, minute);
+    }
+
+    private static Segment raw(LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+        return new Segment(null, from, to, inclusiveEnd);
+    }
+}